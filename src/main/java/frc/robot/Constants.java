@@ -59,6 +59,19 @@ public final class Constants {
     public static final boolean kFrontRightDriveEncoderReversed = true;
     public static final boolean kRearRightDriveEncoderReversed = true;
 
+    // Vision correction of the odometry pose
+    public static final double kVisionCorrectionGain = 0.2; // TUNE: fraction of the error per frame
+    public static final double kVisionMaxCorrectionMeters = 1.0; // Bigger errors are thrown out
+
+    // Steer with Motion Magic on the turning Talons instead of the RIO ProfiledPIDController.
+    public static final boolean kOnboardSteering = false;
+
+    // Which modules close the drive velocity loop on the Talon FX instead of the RIO.
+    public static final boolean kFrontLeftOnboardDriveLoop = false;
+    public static final boolean kRearLeftOnboardDriveLoop = false;
+    public static final boolean kFrontRightOnboardDriveLoop = false;
+    public static final boolean kRearRightOnboardDriveLoop = false;
+
     public static final double kTrackWidth = 0.57785;
     // Distance between centers of right and left wheels on robot
     public static final double kWheelBase = 0.57785;
@@ -69,8 +82,19 @@ public final class Constants {
             new Translation2d(kWheelBase / 2, -kTrackWidth / 2),
             new Translation2d(-kWheelBase / 2, kTrackWidth / 2),
             new Translation2d(-kWheelBase / 2, -kTrackWidth / 2));
+    // Same module positions as kDriveKinematics (front left, front right, rear left, rear right),
+    // kept as plain doubles so the drive can do the inverse kinematics without allocating.
+    public static final double[] kModuleXMeters =
+        {kWheelBase / 2, kWheelBase / 2, -kWheelBase / 2, -kWheelBase / 2};
+    public static final double[] kModuleYMeters =
+        {kTrackWidth / 2, -kTrackWidth / 2, kTrackWidth / 2, -kTrackWidth / 2};
 
     public static final boolean kGyroReversed = false;
+    public static final byte kGyroUpdateRateHz = (byte) 200;
+
+    // Odometry is sampled on its own notifier instead of in the 50 Hz periodic.
+    public static final double kOdometryFrequencyHz = 200;
+    public static final int kOdometrySampleBufferSize = 256; // A little over a second of samples
 
 
     // Values to scale joystick inputs to desired states.
@@ -112,6 +136,11 @@ public final class Constants {
     public static final double kDModuleDriveController = 0;
 
 
+    // Drive velocity and CANCoder frames come in as often as the odometry notifier reads them.
+    public static final int kOdometryStatusFramePeriodMs = 5;
+    // Module sensor data older than this (or a CANCoder that stopped sending) is treated as stale.
+    public static final double kSensorStaleThresholdSeconds = 0.05;
+
     public static final int kDriveFXEncoderCPR = 2048;
     public static final int kTurningCANcoderCPR = 4096;
     public static final double kWheelDiameterMeters = 0.1016; // 4 inches
@@ -119,6 +148,26 @@ public final class Constants {
         kWheelDiameterMeters * Math.PI; // C = D * pi
     public static final double kDrivetoMetersPerSecond =
         (10 * kWheelCircumferenceMeters) / (kDriveGearRatio * 2048);
+
+    // kPModuleDriveController converted to Talon units, 1023 = full output and the error is in
+    // encoder ticks per 100 ms.
+    public static final double kPModuleDriveTalon =
+        kPModuleDriveController / 12 * 1023 * kDrivetoMetersPerSecond; // TUNE
+
+    // Onboard steering, in CANCoder units (4096 per rotation, velocity per 100 ms).
+    private static final double kTurnRadiansPerSecondToTalon =
+        kTurningCANcoderCPR / (2 * Math.PI) / 10;
+    // Whether positive turn output reads as negative on a CANCoder that isn't reversed. Modules
+    // with a reversed CANCoder get the opposite phase. Matches the RIO loop.
+    public static final boolean kTurningRemoteSensorPhase = false;
+    public static final double kPModuleTurnTalon =
+        kPModuleTurnController / 12 * 1023 / (kTurningCANcoderCPR / (2 * Math.PI)); // TUNE
+    public static final double kFModuleTurnTalon =
+        DriveConstants.kvTurning / 12 * 1023 / kTurnRadiansPerSecondToTalon; // TUNE
+    public static final double kModuleTurnTalonCruiseVelocity =
+        kMaxModuleAngularSpeedRadiansPerSecond * kTurnRadiansPerSecondToTalon;
+    public static final double kModuleTurnTalonAcceleration =
+        kMaxModuleAngularAccelerationRadiansPerSecondSquared * kTurnRadiansPerSecondToTalon;
   }
 
   public static final class IntakeConstants {
@@ -138,6 +187,17 @@ public final class Constants {
     public static final int bottomTowerSensorPort = 1;
     public static final int topTowerSensorPort = 0;
     public static final double towerMotorSpeed = 0.5;
+    // Time from starting the tower until the top ball reaches the shooter wheels
+    public static final double kBallTransitTimeSeconds = 0.15; // TUNE
+    // The tower holds two balls
+    public static final int kMaxBalls = 2;
+    // How much each measured bottom to top transit time moves the average
+    public static final double kTransitAverageGain = 0.2;
+    // Tower speed for bringing a ball up to the top sensor without shooting it
+    public static final double kStagingSpeed = 0.35; // TUNE
+    // Don't release the next ball until the last one has had time to get through the wheels and
+    // slow them down, otherwise the shooter still looks ready
+    public static final double kMinShotSpacingSeconds = 0.1; // TUNE
   }
 
   public static final class ShooterConstants {
@@ -161,10 +221,22 @@ public final class Constants {
     public static double cameraHeight = Units.inchesToMeters(28.5); //0.6604; // Meters
     public static double cameraAngle = 35; // Degrees
     public static double targetHeight = 2.67; // Meters
+    public static double cameraForwardOffset = 0; // Meters in front of robot center // FIXME
+    // The vision pose correction and the radial velocity both put the camera at cameraForwardOffset,
+    // so they stay off until it's been measured on the robot
+    public static final boolean kCameraForwardOffsetMeasured = false; // FIXME
+    public static double imageCaptureLatencyMs = 11; // Added to tl, from the Limelight docs
 
     public static double kTopEjectRPM = 700;
     public static double kBottomEjectRPM = 700;
 
+    // Loaded from the deploy directory, and reloaded when it changes. The tables below are the
+    // fallback if the file is missing or bad.
+    public static final String kShotMapFileName = "shotmap.csv";
+
+    // Shot logs for ShotTableTuner
+    public static final String kShotLogDirectory = "/home/lvuser/shots";
+
     // NOTE: min tuned value is 1500
     public static double[][] topMotorValues = {
         //{distance, rpm}
@@ -191,6 +263,7 @@ public final class Constants {
     };
 
 
+    public static final double kAimDeadbandDegrees = 1;
     public static double turnkP = 0.3;
     public static double turnkI = 0;
     public static double turnkD = 0;
@@ -199,6 +272,32 @@ public final class Constants {
     public static double ksTurning = 0.0;
     public static double kvTurning = 0.0;
 
+    // Shooting on the move
+    public static final double kMaxShootingSpeedMetersPerSecond = 2.0; // TUNE
+    public static final double kTimeOfFlightBaseSeconds = 0.5; // TUNE
+    public static final double kTimeOfFlightSecondsPerMeter = 0.1; // TUNE
+    // The time of flight above is a placeholder. Leading shots and the radial velocity shot map
+    // stay off until it's been measured, along with cameraForwardOffset
+    public static final boolean kTimeOfFlightMeasured = false; // FIXME
+
+    // Radial velocity range of the shot map grid, towards the hub is positive
+    public static final double kShotMapMaxRadialVelocityMetersPerSecond = 3.0;
+    public static final int kShotMapRadialVelocityCells = 24; // Even, so 0 is on the grid
+
+    // Recovery kick after a ball goes through the wheels
+    public static final boolean kRecoveryKickEnabled = true;
+    public static final double kRecoveryKickSeconds = 0.1; // TUNE
+    public static final double kRecoveryWindowSeconds = 0.3; // How long to watch the dip for
+    public static final double kRecoveryKickVoltsPerRPM = 0.01; // TUNE
+    // Fraction of the error left when the kick ends that goes into the next kick
+    public static final double kRecoveryLearningRate = 0.3;
+    public static final double kRecoveryMaxOvershootRPM = 100;
+    public static final int kRecoveryMaxOvershoots = 3; // In a row, before turning the kick off
+
+    // Wheel speed error that counts as ready to shoot
+    public static final double kTopRPMTolerance = 30;
+    public static final double kBottomRPMTolerance = 20;
+
     public static double topkP = 0.08; // 0.0015 // 0.003 // 0.0045
     public static double topkS = 0; // LEAVE AS 0
     public static double topkV = 0.0485; // 0.001925
@@ -207,6 +306,22 @@ public final class Constants {
     public static double bottomkS = 0;
     public static double bottomkV = 0.0483; //0.0019
     public static double bottomkA = 0;
+    // Talon velocity loop integral, only applied within the integral zone of the target
+    public static double kTalonVelocitykI = 0.0001;
+    public static double kTalonIntegralZoneRPM = 150;
+    // Added to the predicted time until the wheels are at speed. The filtered acceleration lags
+    // and the tail is slower than first order, so the prediction runs short. Fit against
+    // FlywheelSim in ShooterTimeToReadyTest
+    public static final double kTimeToReadyMarginSeconds = 0.06; // TUNE
+
+    // State space flywheel control, used instead of the Talon velocity PIDF when enabled
+    public static final boolean kStateSpaceControl = false; // Measure the inertias first
+    public static final double kTopFlywheelMomentOfInertia = 0.0015; // kg m^2 at the motor // FIXME
+    public static final double kBottomFlywheelMomentOfInertia = 0.0015; // kg m^2 at the motor // FIXME
+    public static final double kFlywheelModelStdDevRadiansPerSecond = 3.0; // TUNE
+    public static final double kFlywheelEncoderStdDevRadiansPerSecond = 0.01; // TUNE
+    public static final double kFlywheelVelocityToleranceRadiansPerSecond = 8.0; // TUNE
+    public static final double kFlywheelControlEffortVolts = 12.0;
   }
 
 
@@ -241,6 +356,13 @@ public final class Constants {
     public static final double kDClimbController = 0;
     public static final double kMaxClimbSpeedMetersPerSecond = 0.6; // FIXME, TUNE
     public static final double kMaxClimbAccelerationMetersPerSecondSquared = 0.4; // FIXME, TUNE
+    // Synchronized climb: output per meter of left/right hook height difference, taken off the arm
+    // that's ahead and given to the one that's behind
+    public static final double kClimbCrossCouplingGain = 3; // TUNE
+    // Most output the cross-coupling term can add or take off either arm
+    public static final double kClimbMaxCrossCouplingOutput = 0.2; // TUNE
+    // in meters, warn the drivers if the hooks get this far apart
+    public static final double kClimbMaxHookHeightDifference = 0.25;
 
     // Motor constants
     public static final int kLeftClimbMotorPort = 12;
@@ -257,6 +379,22 @@ public final class Constants {
 
     public static double kSlightlyAboveBar = 1.1;
     public static double kSlightlyBelowBar = 0.75;
+
+    // Climb sequencing gates
+    // How long the climb piston takes to finish its stroke
+    public static final double kClimbSolenoidSettleSeconds = 0.3; // TUNE
+    // The robot counts as hanging still below this pitch rate
+    public static final double kClimbSwingSettledDegreesPerSecond = 10; // TUNE
+    // ...for this many cycles in a row
+    public static final int kClimbSwingSettledCycles = 5; // TUNE
+    // Time constant of the pitch rate filter
+    public static final double kClimbSwingRateFilterSeconds = 0.05;
+    // Sign of the pitch rate when the robot swings towards the next bar
+    public static final double kClimbSwingTowardNextBarSign = 1; // FIXME: check on the robot
+    // Output for taking up the slack until the hooks catch the next bar
+    public static final double kClimbLatchOutput = -0.2; // TUNE
+    // Both climb motors pull at least this much when the hooks have caught the bar
+    public static final double kClimbLatchCurrentAmps = 30; // TUNE
   }
 
   public static final class LEDsConstants {
@@ -289,6 +427,22 @@ public final class Constants {
     public static final TrapezoidProfile.Constraints kThetaControllerConstraints =
         new TrapezoidProfile.Constraints(
             kMaxAngularSpeedRadiansPerSecond, kMaxAngularSpeedRadiansPerSecondSquared);
+
+    // FollowTrajectory finishes once the path's time is up and the robot is this close to the end
+    public static final double kTrajectoryPositionToleranceMeters = 0.1; // TUNE
+    public static final double kTrajectoryRotationToleranceDegrees = 5; // TUNE
+    // ...or this long after the path's time is up, whether or not it got there. Every auto has to
+    // fit in the 15 s period with this added to each of its paths.
+    public static final double kTrajectoryTimeoutMarginSeconds = 0.2;
+  }
+
+  public static final class FieldConstants {
+
+    // Center of the hub in PathWeaver field coordinates
+    public static final double kHubXMeters = Units.feetToMeters(27);
+    public static final double kHubYMeters = Units.feetToMeters(13.5);
+    // Radius of the vision tape ring on the upper hub
+    public static final double kHubRadiusMeters = Units.inchesToMeters(26.6875);
   }
 
   public static final class PathWeaverConstants {
@@ -317,5 +471,18 @@ public final class Constants {
     public static final String fourthPathOld3Ball = "output/fourthPathOld3Ball.wpilib.json";
 
     public static final String testingPath1 = "output/testing.wpilib.json";
+
+    // The RIO has two cores, load two trajectories at a time
+    public static final int kTrajectoryLoaderThreads = 2;
+
+    // TrajectoryRetimer replaces PathWeaver's timing with one based on what the modules can do
+    public static final boolean kRetimeTrajectories = true;
+    // Fraction of the module top speed the path can use, the rest is left for the controllers
+    public static final double kRetimeSpeedFraction = 0.9; // TUNE
+    // Traction limit of a module, shared between speeding up and turning. About 0.7 g, the drive
+    // motors can do more than this at low speed so the wheels are what limit it.
+    public static final double kRetimeMaxModuleAccelerationMetersPerSecondSquared = 7; // TUNE
+    // Planned drive motor voltage, under 12 so a sagging battery can still keep up
+    public static final double kRetimeVoltage = 10;
   }
 }
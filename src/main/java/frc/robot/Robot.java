@@ -66,6 +66,7 @@ public class Robot extends TimedRobot {
   @Override
   public void disabledPeriodic() {
 //    m_robotContainer.setLEDsDisabled();
+    m_robotContainer.prioritizeSelectedAuto();
   }
 
   /** This autonomous runs the autonomous command selected by your {@link RobotContainer} class. */
@@ -98,8 +99,10 @@ public class Robot extends TimedRobot {
     // this line or comment it out.
 
     m_robotContainer.setLEDsDefault();
+    m_robotContainer.setGyroAfterAuto(m_autonomousCommand);
     if (m_autonomousCommand != null) {
       m_autonomousCommand.cancel();
+      m_autonomousCommand = null;
     }
     m_robotContainer.teleopInitFunc();
   }
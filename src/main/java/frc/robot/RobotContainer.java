@@ -39,7 +39,9 @@ import frc.robot.subsystems.IntakeSubsystem;
 import frc.robot.subsystems.LEDsSubsystem;
 import frc.robot.subsystems.LimelightSubsystem;
 import frc.robot.subsystems.ShooterSubsystem;
+import frc.robot.subsystems.ShotRecorder;
 import frc.robot.subsystems.TowerSubsystem;
+import frc.robot.subsystems.TrajectoryLoader;
 import java.util.function.DoubleSupplier;
 
 /*
@@ -58,23 +60,22 @@ public class RobotContainer {
   private final ClimbSubsystem m_climbSubsystem = new ClimbSubsystem();
   private final LimelightSubsystem m_Limelight = LimelightSubsystem.getInstance();
   private final TowerSubsystem m_tower = new TowerSubsystem();
-  private final ShooterSubsystem m_shooter = new ShooterSubsystem();
+  private final ShooterSubsystem m_shooter = new ShooterSubsystem(m_tower::getShotCount);
   private final LEDsSubsystem m_LEDs = new LEDsSubsystem();
-
-  private final Command fiveBallAuto = new FiveBallAutoCommand(m_shooter, m_tower, m_robotDrive,
-      m_LEDs,
-      m_intakeSubsystem);
-  private final Command twoBallAuto = new TwoBallAutoCommand(m_shooter, m_tower, m_robotDrive,
-      m_LEDs,
-      m_intakeSubsystem);
-  private final Command threeBallAuto = new ThreeBallAutoCommand(m_shooter, m_tower, m_robotDrive,
-      m_LEDs,
-      m_intakeSubsystem);
-  private final Command oldTwoBallAuto = new OldTwoBallAutoCommand(m_shooter, m_tower, m_robotDrive,
-      m_LEDs, m_intakeSubsystem);
-  private final Command oldThreeBallAuto = new OldThreeBallAutoCommand(m_shooter, m_tower,
-      m_robotDrive,
-      m_LEDs, m_intakeSubsystem);
+  private final ShotRecorder m_shotRecorder =
+      new ShotRecorder(m_shooter, m_tower, m_robotDrive, m_Limelight);
+  private final TrajectoryLoader m_trajectoryLoader = TrajectoryLoader.getInstance();
+
+  private final Command fiveBallAuto = m_trajectoryLoader.trackPaths(() ->
+      new FiveBallAutoCommand(m_shooter, m_tower, m_robotDrive, m_LEDs, m_intakeSubsystem));
+  private final Command twoBallAuto = m_trajectoryLoader.trackPaths(() ->
+      new TwoBallAutoCommand(m_shooter, m_tower, m_robotDrive, m_LEDs, m_intakeSubsystem));
+  private final Command threeBallAuto = m_trajectoryLoader.trackPaths(() ->
+      new ThreeBallAutoCommand(m_shooter, m_tower, m_robotDrive, m_LEDs, m_intakeSubsystem));
+  private final Command oldTwoBallAuto = m_trajectoryLoader.trackPaths(() ->
+      new OldTwoBallAutoCommand(m_shooter, m_tower, m_robotDrive, m_LEDs, m_intakeSubsystem));
+  private final Command oldThreeBallAuto = m_trajectoryLoader.trackPaths(() ->
+      new OldThreeBallAutoCommand(m_shooter, m_tower, m_robotDrive, m_LEDs, m_intakeSubsystem));
 
   private final SendableChooser<Command> autoChooser = new SendableChooser<>();
 
@@ -280,16 +281,20 @@ public class RobotContainer {
             is75Percent::get, m_LEDs)); // This works
 
     new JoystickButton(m_buttonController, 8).whileHeld(new ClimbSetPos(m_climbSubsystem, ClimbConstants.kClimbMinHeight));
-    new JoystickButton(m_buttonController, 10).toggleWhenPressed(new ClimbCommand(m_climbSubsystem));
+    new JoystickButton(m_buttonController, 10).toggleWhenPressed(new ClimbCommand(m_climbSubsystem, m_robotDrive::getPitchDegrees));
     new JoystickButton(m_buttonController, 11).whenPressed(new InstantCommand(m_climbSubsystem::resetEncoders));
 
+    // Label the last shot for the shot log
+    new JoystickButton(m_buttonController, 5).whenPressed(new InstantCommand(() -> m_shotRecorder.labelLastShot(true)));
+    new JoystickButton(m_buttonController, 12).whenPressed(new InstantCommand(() -> m_shotRecorder.labelLastShot(false)));
+
 //    new JoystickButton(m_buttonController, 0-9).whileHeld(new SetTowerMotorSpeed(m_tower, -TowerConstants.towerMotorSpeed));
 
 // auto climb stuff
 //
 //    new JoystickButton(m_buttonController, 8).whenPressed(new ClimbFullExtension(m_climbSubsystem));
 //    new JoystickButton(m_buttonController, 7).whenPressed(new ClimbBottomPosition(m_climbSubsystem));
-//    new JoystickButton(m_buttonController, 6).whenPressed(new ClimbNextBar(m_climbSubsystem));
+//    new JoystickButton(m_buttonController, 6).whenPressed(new ClimbNextBar(m_climbSubsystem, m_robotDrive::getPitchDegrees));
 //    X_BUTTON.whenPressed(new InstantCommand(m_climbSubsystem::resetEncoders));
 
 //    B_BUTTON.toggleWhenPressed(new ShooterPIDtesting(m_shooter,m_LEDs,m_tower));
@@ -322,4 +327,27 @@ public class RobotContainer {
 //    return new TwoBallAutoCommand(m_shooter, m_tower, m_robotDrive, m_LEDs, m_intakeSubsystem);
     return autoChooser.getSelected();
   }
+
+  /**
+   * Sets up the gyro for field relative driving after the autos that end in a known heading. Call
+   * this at the start of teleop, before the auto gets canceled.
+   *
+   * @param autoCommand the auto that ran, or null
+   */
+  public void setGyroAfterAuto(Command autoCommand) {
+    if (autoCommand == twoBallAuto && !autoCommand.isScheduled()) {
+      // Only if it finished, its last path ends facing the direction the gyro gets zeroed at
+      m_robotDrive.zeroHeading();
+    }
+    // FIXME the 5 ball auto leaves the gyro alone, like it always has. Where it ends up facing
+    // (setGyroOffset(90)?) needs checking with the drivers before this sets anything for it.
+  }
+
+  /**
+   * Loads the trajectories for the auto picked in the chooser before the others. Call this while
+   * disabled.
+   */
+  public void prioritizeSelectedAuto() {
+    m_trajectoryLoader.prioritize(autoChooser.getSelected());
+  }
 }
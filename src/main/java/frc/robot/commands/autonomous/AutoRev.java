@@ -5,7 +5,6 @@
 package frc.robot.commands.autonomous;
 
 import edu.wpi.first.wpilibj2.command.CommandBase;
-import frc.robot.Constants.ShooterConstants;
 import frc.robot.subsystems.*;
 
 
@@ -25,16 +24,16 @@ public class AutoRev extends CommandBase {
   @Override
   public void initialize() {
     shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
+        limelight.getBottomShooterRPM(),
+        limelight.getTopShooterRPM()
     );
   }
 
   @Override
   public void execute() {
     shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
+        limelight.getBottomShooterRPM(),
+        limelight.getTopShooterRPM()
     );
     if (!limelight.hasValidTarget()) {
       leds.setLEDsNoValidTarget();
@@ -4,13 +4,9 @@
 
 package frc.robot.commands.autonomous;
 
-import edu.wpi.first.math.controller.ProfiledPIDController;
-import edu.wpi.first.math.controller.SimpleMotorFeedforward;
-import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 
-import frc.robot.Constants.ShooterConstants;
 import frc.robot.Constants.TowerConstants;
 import frc.robot.subsystems.*;
 
@@ -21,22 +17,11 @@ public class AutoShootIntake extends CommandBase {
   private final TowerSubsystem towerSubsystem;
   private final LimelightSubsystem limelight;
   private final DriveSubsystem driveSubsystem;
+  private final AimingController aimingController;
   private final LEDsSubsystem LEDS;
   private final IntakeSubsystem intakeSubsystem;
   private boolean intakedThirdBall = false;
 
-  private final ProfiledPIDController turnProfiledPIDController = new ProfiledPIDController(
-      ShooterConstants.turnkP,
-      ShooterConstants.turnkI,
-      ShooterConstants.turnkD,
-      new TrapezoidProfile.Constraints(
-          ShooterConstants.kMaxTurnAngularSpeedRadiansPerSecond,
-          ShooterConstants.kMaxTurnAngularAccelerationRadiansPerSecondSquared)
-  );
-  private final SimpleMotorFeedforward turnFeedforward = new SimpleMotorFeedforward(
-      ShooterConstants.ksTurning, ShooterConstants.kvTurning
-  );
-
   private double headingError = 0;
 
   /**
@@ -50,6 +35,7 @@ public class AutoShootIntake extends CommandBase {
     this.towerSubsystem = towerSubsystem;
     this.limelight = limelight;
     this.driveSubsystem = driveSubsystem;
+    this.aimingController = driveSubsystem.getAimingController();
     this.LEDS = leds;
     this.intakeSubsystem = intakeSubsystem;
     addRequirements(shooterSubsystem, towerSubsystem, limelight, driveSubsystem, leds, intakeSubsystem);
@@ -57,17 +43,18 @@ public class AutoShootIntake extends CommandBase {
 
   @Override
   public void initialize() {
+    aimingController.reset();
     shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
+        limelight.getBottomShooterRPM(),
+        limelight.getTopShooterRPM()
     );
   }
 
   @Override
   public void execute() {
     shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
+        limelight.getBottomShooterRPM(),
+        limelight.getTopShooterRPM()
     );
 
 //    if (!towerSubsystem.getIsBallInTop()) {
@@ -87,27 +74,19 @@ public class AutoShootIntake extends CommandBase {
       intakeSubsystem.setMotorStopped();
     }
 
-    headingError = limelight.getTargetOffsetX();
-
-    // If heading error isn't off by much, it won't move
-//    if (Math.abs(headingError) < 1) headingError = 0;
-
-    double turnRobotOutput =
-        turnProfiledPIDController.calculate(headingError, 0)
-            + turnFeedforward.calculate(turnProfiledPIDController.getSetpoint().velocity);
+    headingError = aimingController.getHeadingErrorDegrees();
+    double turnRobotOutput = aimingController.calculate();
 
     driveSubsystem.drive(0, 0, turnRobotOutput, true);
 
     SmartDashboard.putBoolean("Ready to shoot", isReadyToShoot());
+    towerSubsystem.feedShooter(limelight.hasValidTarget(), getTimeToReadySeconds());
     if (isReadyToShoot()) {
       LEDS.setLEDsReadyToShoot();
-      towerSubsystem.setTowerMotorsSpeed(TowerConstants.towerMotorSpeed);
     } else if (!limelight.hasValidTarget()) {
       LEDS.setLEDsNoValidTarget();
-      towerSubsystem.setTowerMotorsSpeed(0);
     } else {
       LEDS.setLEDsShooterLiningUp();
-      towerSubsystem.setTowerMotorsSpeed(0);
     }
   }
 
@@ -130,6 +109,15 @@ public class AutoShootIntake extends CommandBase {
     // We want to never miss any shots.
     SmartDashboard.putBoolean("rpm within range: ", shooterSubsystem.isShooterWithinAcceptableError());
     SmartDashboard.putNumber("limelight offset: ", Math.abs(limelight.getTargetOffsetX()));
-    return (((Math.abs(headingError) < 5) && (limelight.hasValidTarget()) && (shooterSubsystem.isShooterWithinAcceptableError())));
+    return limelight.hasValidTarget()
+        && getTimeToReadySeconds() <= TowerConstants.kBallTransitTimeSeconds;
+  }
+
+  // Start the tower early enough that the ball gets to the wheels right as the wheels and the
+  // heading settle.
+  private double getTimeToReadySeconds() {
+    return Math.max(
+        shooterSubsystem.getTimeToReadySeconds(),
+        driveSubsystem.getTimeToHeadingSeconds(headingError, 5));
   }
 }
@@ -2,10 +2,7 @@ package frc.robot.commands.autonomous;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.wpilibj2.command.RunCommand;
-import edu.wpi.first.wpilibj2.command.InstantCommand;
-import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
-import edu.wpi.first.wpilibj2.command.ParallelRaceGroup;
+import edu.wpi.first.wpilibj2.command.ParallelDeadlineGroup;
 import edu.wpi.first.wpilibj2.command.RunCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import frc.robot.Constants.PathWeaverConstants;
@@ -29,15 +26,14 @@ public class FiveBallAutoCommand extends SequentialCommandGroup {
 
     addCommands(
         // 1. Backs up from the pad and intakes
-        new ParallelCommandGroup(
+        new ParallelDeadlineGroup(
             new FollowTrajectory(driveSubsystem, PathWeaverConstants.firstPath5Ball, true),
             new IntakeWithTower(intakeSubsystem, towerSubsystem)
-        ).withTimeout(1.4),
+        ),
 
         // 2. Revs up the shooter while going in right in front of the third ball
-        new ParallelRaceGroup(
-            new FollowTrajectory(driveSubsystem, PathWeaverConstants.secondPath5Ball,
-                false).withTimeout(2.1), // 2.36
+        new ParallelDeadlineGroup(
+            new FollowTrajectory(driveSubsystem, PathWeaverConstants.secondPath5Ball, false),
             new AutoRev(shooterSubsystem, LimelightSubsystem.getInstance(), ledsSubsystem),
             new TowerIntake(towerSubsystem)
         ),
@@ -47,27 +43,25 @@ public class FiveBallAutoCommand extends SequentialCommandGroup {
             driveSubsystem, ledsSubsystem, intakeSubsystem).withTimeout(3.45),
 
         // 4. Goes to the area where it can pick up cargo from human player while intaking
-        new ParallelCommandGroup(
+        new ParallelDeadlineGroup(
             new FollowTrajectory(driveSubsystem, PathWeaverConstants.thirdPath5Ball, false),
             new IntakeWithTower(intakeSubsystem, towerSubsystem)
-        ).withTimeout(3.6),
+        ),
 
         // 5. Revs up shooter while going closer to the hoop
-        new ParallelCommandGroup(
-            new IntakeWithTower(intakeSubsystem, towerSubsystem),
+        new ParallelDeadlineGroup(
             new FollowTrajectory(driveSubsystem, PathWeaverConstants.fourthPath5Ball, false),
+            new IntakeWithTower(intakeSubsystem, towerSubsystem),
             new RunCommand(() -> shooterSubsystem.setShooterRPM(
                 ShooterConstants.bottomMotorValues[2][1], // Sets the RPMs for 8.5 feet away
                 ShooterConstants.topMotorValues[2][1]
             ))
-        ).withTimeout(2.5),
+        ),
 
-        // 6. Shoots the two balls gotten from the human player and corner
+        // 6. Shoots the two balls gotten from the human player and corner, until auto ends. The gyro
+        // offset gets set at the start of teleop, see RobotContainer.setGyroAfterAuto()
         new AutoShoot(shooterSubsystem, towerSubsystem, LimelightSubsystem.getInstance(),
-            driveSubsystem, ledsSubsystem),
-
-        // 7. Sets the gyro offset
-        new InstantCommand(() -> driveSubsystem.setGyroOffset(90))
+            driveSubsystem, ledsSubsystem)
     );
 
   }
@@ -1,79 +1,157 @@
 package frc.robot.commands.autonomous;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.trajectory.Trajectory;
-import edu.wpi.first.math.trajectory.TrajectoryUtil;
-import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.CommandBase;
-import edu.wpi.first.wpilibj2.command.SwerveControllerCommand;
 import frc.robot.Constants.AutoConstants;
-import frc.robot.Constants.DriveConstants;
 import frc.robot.subsystems.DriveSubsystem;
-import java.io.IOException;
-import java.nio.file.Path;
-
+import frc.robot.subsystems.TrajectoryLoader;
+import frc.robot.subsystems.TrajectorySampler;
+
+/**
+ * Follows a PathWeaver trajectory, and finishes once the trajectory's time is up and the robot is
+ * within tolerance of the end pose, so autos can chain steps on it instead of timeouts. If the
+ * robot never gets within tolerance it gives up {@link AutoConstants#kTrajectoryTimeoutMarginSeconds}
+ * after the end of the path.
+ *
+ * <p>The control law is the same as HolonomicDriveController's (trajectory velocity as
+ * feedforward, P on x and y, a profiled controller turning to the end heading), written out with
+ * doubles and a TrajectorySampler so the loop doesn't make new poses and states every cycle.
+ */
 public class FollowTrajectory extends CommandBase {
 
   private final DriveSubsystem drive;
+  private final String trajectoryFilePath;
   private Trajectory trajectory;
+  private TrajectorySampler sampler;
   private boolean toReset;
 
+  private final PIDController xController = new PIDController(AutoConstants.kPXController, 0, 0);
+  private final PIDController yController = new PIDController(AutoConstants.kPYController, 0, 0);
+  private final ProfiledPIDController thetaController =
+      new ProfiledPIDController(
+          AutoConstants.kPThetaController, 0, 0, AutoConstants.kThetaControllerConstraints);
+  private final TrajectorySampler.State desiredState = new TrajectorySampler.State();
+  private final Timer timer = new Timer();
+  private double endRotationRadians;
+  private boolean atReference = false;
+
   public FollowTrajectory(DriveSubsystem drive, String trajectoryFilePath, boolean toReset) {
     this.drive = drive;
+    this.trajectoryFilePath = trajectoryFilePath;
     this.toReset = toReset;
     addRequirements(drive);
 
-    try {
-      Path trajectoryPath = Filesystem.getDeployDirectory().toPath().resolve(trajectoryFilePath);
-      trajectory = TrajectoryUtil.fromPathweaverJson(trajectoryPath);
-    } catch (IOException e) {
-      DriverStation.reportError("Unable to open trajectory: " + trajectoryFilePath,
-          e.getStackTrace());
-    }
+    thetaController.enableContinuousInput(-Math.PI, Math.PI);
+
+    // Parsed in the background, only waited for when the command starts.
+    TrajectoryLoader.getInstance().load(trajectoryFilePath);
   }
 
   @Override
   public void initialize() {
+    Trajectory loaded = TrajectoryLoader.getInstance().await(trajectoryFilePath);
+    if (loaded == null) {
+      // Already reported by the loader.
+      trajectory = null;
+      return;
+    }
+    if (loaded != trajectory) {
+      trajectory = loaded;
+      sampler = new TrajectorySampler(loaded);
+    }
+    sampler.reset();
+
     if (toReset) {
       drive.resetOdometry(trajectory.getInitialPose());
     }
 
-    final ProfiledPIDController thetaController =
-        new ProfiledPIDController(
-            AutoConstants.kPThetaController, 0, 0, AutoConstants.kThetaControllerConstraints);
-    thetaController.enableContinuousInput(-Math.PI, Math.PI);
-
-    new SwerveControllerCommand(
-        trajectory,
-        drive::getPose, // Functional interface to feed supplier
-        DriveConstants.kDriveKinematics,
-
-        // Position controllers
-        new PIDController(AutoConstants.kPXController, 0, 0),
-        new PIDController(AutoConstants.kPYController, 0, 0),
-        thetaController,
-        drive::setModuleStates,
-        drive).andThen(() -> drive.drive(0, 0, 0, false)).schedule(); // Stops the robot
+    // Same as SwerveControllerCommand, the robot turns to face the end heading along the way.
+    endRotationRadians = trajectory.getStates().get(trajectory.getStates().size() - 1).poseMeters
+        .getRotation().getRadians();
+    xController.reset();
+    yController.reset();
+    thetaController.reset(drive.getPose().getRotation().getRadians());
+    atReference = false;
 
-    // Reset odometry to the starting pose of the trajectory.
-    // drive.resetOdometry(trajectory.getInitialPose());
+    timer.reset();
+    timer.start();
   }
 
   @Override
-  public void execute() {}
+  public void execute() {
+    if (trajectory == null) {
+      return;
+    }
+    sampler.sample(timer.get(), desiredState);
+
+    Pose2d pose = drive.getPose();
+    double x = pose.getX() + drive.getVisionOffsetX();
+    double y = pose.getY() + drive.getVisionOffsetY();
+    double rotation = pose.getRotation().getRadians();
+
+    double xFeedforward = desiredState.velocityMetersPerSecond
+        * Math.cos(desiredState.headingRadians);
+    double yFeedforward = desiredState.velocityMetersPerSecond
+        * Math.sin(desiredState.headingRadians);
+    double xSpeed = xFeedforward + xController.calculate(x, desiredState.xMeters);
+    double ySpeed = yFeedforward + yController.calculate(y, desiredState.yMeters);
+    double rotSpeed = thetaController.calculate(rotation, endRotationRadians);
+
+    double positionError = Math.hypot(desiredState.xMeters - x, desiredState.yMeters - y);
+    double rotationError = MathUtil.angleModulus(endRotationRadians - rotation);
+    atReference = positionError <= AutoConstants.kTrajectoryPositionToleranceMeters
+        && Math.abs(rotationError)
+            <= Math.toRadians(AutoConstants.kTrajectoryRotationToleranceDegrees);
+
+    // Field relative to robot relative, using the odometry heading rather than the raw gyro.
+    double cos = Math.cos(rotation);
+    double sin = Math.sin(rotation);
+    drive.drive(xSpeed * cos + ySpeed * sin, -xSpeed * sin + ySpeed * cos, rotSpeed, false);
+  }
 
   @Override
   public void end(boolean interrupted) {
+    timer.stop();
     drive.drive(0, 0, 0, false);
   }
 
   @Override
   public boolean isFinished() {
-    return false;
+    if (trajectory == null) {
+      return true;
+    }
+    double elapsed = timer.get();
+    double totalTime = sampler.getTotalTimeSeconds();
+    return (elapsed >= totalTime && atReference)
+        || elapsed >= totalTime + AutoConstants.kTrajectoryTimeoutMarginSeconds;
   }
 
-}
-
+  /**
+   * Gets how far along the trajectory the robot should be.
+   *
+   * @return 0 at the start to 1 at the end of the trajectory's time
+   */
+  public double getProgress() {
+    if (trajectory == null || sampler.getTotalTimeSeconds() <= 0) {
+      return 1;
+    }
+    return Math.min(1, timer.get() / sampler.getTotalTimeSeconds());
+  }
 
+  /**
+   * Gets how much of the trajectory's time is left.
+   *
+   * @return seconds until the end of the trajectory, 0 once it's over
+   */
+  public double getTimeRemainingSeconds() {
+    if (trajectory == null) {
+      return 0;
+    }
+    return Math.max(0, sampler.getTotalTimeSeconds() - timer.get());
+  }
+}
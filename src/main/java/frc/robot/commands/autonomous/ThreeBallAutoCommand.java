@@ -2,6 +2,7 @@ package frc.robot.commands.autonomous;
 
 import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.ParallelDeadlineGroup;
 import edu.wpi.first.wpilibj2.command.RunCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import frc.robot.Constants.PathWeaverConstants;
@@ -24,10 +25,10 @@ public class ThreeBallAutoCommand extends SequentialCommandGroup {
 
     addCommands(
         // 1. Crosses the line while running the intake backwards
-        new ParallelCommandGroup(
+        new ParallelDeadlineGroup(
             new FollowTrajectory(driveSubsystem, PathWeaverConstants.firstPath3Ball, true),
             new AutoIntakeBlow(intakeSubsystem)
-        ).withTimeout(1.4),
+        ),
 
         // 2. Runs the intake backwards to blow away the ball
         new AutoIntakeBlow(intakeSubsystem).withTimeout(1.5),
@@ -47,23 +48,23 @@ public class ThreeBallAutoCommand extends SequentialCommandGroup {
         new AutoDriveIntake(driveSubsystem, intakeSubsystem, towerSubsystem, .622).withTimeout(1), // TODO: Tune Values
 
         // 6. Goes back towards the hoop while bumping an enemy ball and revving up the shooter
-        new ParallelCommandGroup(
+        new ParallelDeadlineGroup(
             new FollowTrajectory(driveSubsystem, PathWeaverConstants.secondPath3Ball, false),
             new RunCommand(() -> shooterSubsystem.setShooterRPM(
                 ShooterConstants.bottomMotorValues[0][1], // Sets the RPMs for 5.5 feet away
                 ShooterConstants.topMotorValues[0][1]
             ))
-        ).withTimeout(2.7),
+        ),
 
         // 7. Shoots two balls
         new AutoShoot(shooterSubsystem, towerSubsystem, LimelightSubsystem.getInstance(),
             driveSubsystem, ledsSubsystem).withTimeout(1.9),
 
         // 8. Picks up the third ball
-        new ParallelCommandGroup(
+        new ParallelDeadlineGroup(
             new FollowTrajectory(driveSubsystem, PathWeaverConstants.thirdPath3Ball, false),
             new IntakeWithTower(intakeSubsystem, towerSubsystem)
-        ).withTimeout(1.4),
+        ),
 
         // 9. Shoots the third ball
         new AutoShoot(shooterSubsystem, towerSubsystem, LimelightSubsystem.getInstance(),
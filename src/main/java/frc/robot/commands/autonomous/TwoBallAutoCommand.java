@@ -1,7 +1,7 @@
 package frc.robot.commands.autonomous;
 
-import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.ParallelDeadlineGroup;
 import edu.wpi.first.wpilibj2.command.RunCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import edu.wpi.first.wpilibj2.command.WaitCommand;
@@ -25,17 +25,17 @@ public class TwoBallAutoCommand extends SequentialCommandGroup {
 
     addCommands(
         // 1. Backs up from the pad and intakes the second ball
-        new ParallelCommandGroup(
+        new ParallelDeadlineGroup(
             new FollowTrajectory(driveSubsystem, PathWeaverConstants.firstPath2Ball, true),
             new IntakeWithTower(intakeSubsystem, towerSubsystem)
-        ).withTimeout(2),
+        ),
 
         // 2. Moves closer to the hoop
-        new ParallelCommandGroup(
+        new ParallelDeadlineGroup(
             new FollowTrajectory(driveSubsystem, PathWeaverConstants.secondPath2Ball, false),
             new IntakeWithTower(intakeSubsystem, towerSubsystem),
             new AutoRev(shooterSubsystem, LimelightSubsystem.getInstance(), ledsSubsystem)
-        ).withTimeout(1.2),
+        ),
 
         // 3. Shoots two balls
         new AutoShoot(shooterSubsystem, towerSubsystem, LimelightSubsystem.getInstance(),
@@ -43,7 +43,7 @@ public class TwoBallAutoCommand extends SequentialCommandGroup {
 
         // 4. Picks up an enemy ball, then goes into the hangar
         new ParallelCommandGroup(
-            new FollowTrajectory(driveSubsystem, PathWeaverConstants.thirdPath2Ball, false).withTimeout(3.61),
+            new FollowTrajectory(driveSubsystem, PathWeaverConstants.thirdPath2Ball, false),
             new IntakeWithTower(intakeSubsystem, towerSubsystem).withTimeout(2.4)
         ),
 
@@ -54,13 +54,13 @@ public class TwoBallAutoCommand extends SequentialCommandGroup {
         new EjectCommand(towerSubsystem, intakeSubsystem).withTimeout(1.6),
 
         // 7. Goes near white line in the direction of a ball and the direction to reset the gyro at
-        new FollowTrajectory(driveSubsystem, PathWeaverConstants.fourthPath2Ball, false).withTimeout(2.5),
+        new FollowTrajectory(driveSubsystem, PathWeaverConstants.fourthPath2Ball, false),
 
         new RunCommand(
             ()-> driveSubsystem.drive(0, 0, 0, false)
-        ).withTimeout(0.1),
+        ).withTimeout(0.1)
 
-        new InstantCommand(driveSubsystem::zeroHeading)
+        // The gyro gets zeroed at the start of teleop, see RobotContainer.setGyroAfterAuto()
     );
 
   }
@@ -4,12 +4,8 @@
 
 package frc.robot.commands.autonomous;
 
-import edu.wpi.first.math.controller.ProfiledPIDController;
-import edu.wpi.first.math.controller.SimpleMotorFeedforward;
-import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.CommandBase;
-import frc.robot.Constants.ShooterConstants;
 import frc.robot.Constants.TowerConstants;
 import frc.robot.subsystems.*;
 
@@ -19,20 +15,9 @@ public class TwoBallAutoShoot extends CommandBase {
   private final TowerSubsystem towerSubsystem;
   private final LimelightSubsystem limelight;
   private final DriveSubsystem driveSubsystem;
+  private final AimingController aimingController;
   private final LEDsSubsystem LEDS;
 
-  private final ProfiledPIDController turnProfiledPIDController = new ProfiledPIDController(
-      ShooterConstants.turnkP,
-      ShooterConstants.turnkI,
-      ShooterConstants.turnkD,
-      new TrapezoidProfile.Constraints(
-          ShooterConstants.kMaxTurnAngularSpeedRadiansPerSecond,
-          ShooterConstants.kMaxTurnAngularAccelerationRadiansPerSecondSquared)
-  );
-  private final SimpleMotorFeedforward turnFeedforward = new SimpleMotorFeedforward(
-      ShooterConstants.ksTurning, ShooterConstants.kvTurning
-  );
-
   private int initialBallCount = 0;
   private int ballcount = 0;
   private double towerSpeed = TowerConstants.towerMotorSpeed;
@@ -50,42 +35,33 @@ public class TwoBallAutoShoot extends CommandBase {
     this.towerSubsystem = towerSubsystem;
     this.limelight = limelight;
     this.driveSubsystem = driveSubsystem;
+    this.aimingController = driveSubsystem.getAimingController();
     this.LEDS = leds;
     addRequirements(shooterSubsystem, limelight, leds, driveSubsystem);
   }
 
   @Override
   public void initialize() {
+    aimingController.reset();
     shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
+        limelight.getBottomShooterRPM(),
+        limelight.getTopShooterRPM()
     );
 
-    headingError = limelight.getTargetOffsetX();
-
-    double turnRobotOutput =
-        turnProfiledPIDController.calculate(headingError, 0)
-            + turnFeedforward.calculate(turnProfiledPIDController.getSetpoint().velocity);
+    headingError = aimingController.getHeadingErrorDegrees();
 
-    if (towerSubsystem.getIsBallInBottom()) {
-      ballcount += 1;
-    }
-    if (towerSubsystem.getIsBallInTop()) {
-      ballcount += 1;
-    }
-    initialBallCount = ballcount;
+    initialBallCount = towerSubsystem.getBallCount();
+    ballcount = initialBallCount;
   }
 
   @Override
   public void execute() {
     shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
+        limelight.getBottomShooterRPM(),
+        limelight.getTopShooterRPM()
     );
 
-    if ((initialBallCount == 2) && !(towerSubsystem.getIsBallInBottom())) {
-      ballcount = 1;
-    }
+    ballcount = towerSubsystem.getBallCount();
     if (initialBallCount == 1) {
       shotOne = true;
     } else if ((initialBallCount == 2) && (ballcount == 1)) {
@@ -94,24 +70,17 @@ public class TwoBallAutoShoot extends CommandBase {
 
 //    towerSpeed = (shotOne ? 0.34 : TowerConstants.towerMotorSpeed);
 
-    headingError = limelight.getTargetOffsetX();
-
-    // If heading error isn't off by much, it won't move
-//    if (Math.abs(headingError) < 1) headingError = 0;
-
-    double turnRobotOutput =
-        turnProfiledPIDController.calculate(headingError, 0)
-            + turnFeedforward.calculate(turnProfiledPIDController.getSetpoint().velocity);
+    headingError = aimingController.getHeadingErrorDegrees();
+    double turnRobotOutput = aimingController.calculate();
 
     driveSubsystem.drive(0, 0, turnRobotOutput, true);
 
     SmartDashboard.putBoolean("Ready to shoot", isReadyToShoot());
+    towerSubsystem.feedShooter(limelight.hasValidTarget(), getTimeToReadySeconds());
     if (isReadyToShoot()) {
       LEDS.setLEDsReadyToShoot();
-      towerSubsystem.setTowerMotorsSpeed(TowerConstants.towerMotorSpeed);
     } else {
       LEDS.setLEDsShooterLiningUp();
-      towerSubsystem.setTowerMotorsSpeed(0);
     }
 //    SmartDashboard.putNumber("Target offset X: ", limelight.getTargetOffsetX());
 //    SmartDashboard.putBoolean("Has valid target: ", limelight.hasValidTarget());
@@ -137,4 +106,12 @@ public class TwoBallAutoShoot extends CommandBase {
     SmartDashboard.putNumber("limelight offset: ", Math.abs(limelight.getTargetOffsetX()));
     return (((Math.abs(headingError) < 5) && (limelight.hasValidTarget()) && (shooterSubsystem.isShooterWithinAcceptableError())));
   }
+
+  // Start the tower early enough that the ball gets to the wheels right as the wheels and the
+  // heading settle.
+  private double getTimeToReadySeconds() {
+    return Math.max(
+        shooterSubsystem.getTimeToReadySeconds(),
+        driveSubsystem.getTimeToHeadingSeconds(headingError, 5));
+  }
 }
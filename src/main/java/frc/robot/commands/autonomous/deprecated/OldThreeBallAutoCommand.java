@@ -1,7 +1,7 @@
 package frc.robot.commands.autonomous.deprecated;
 
 import edu.wpi.first.wpilibj2.command.InstantCommand;
-import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.ParallelDeadlineGroup;
 import edu.wpi.first.wpilibj2.command.RunCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import frc.robot.Constants.PathWeaverConstants;
@@ -26,39 +26,38 @@ public class OldThreeBallAutoCommand extends SequentialCommandGroup {
 
     addCommands(
         // 1. Goes in front of ball across the line
-        new FollowTrajectory(driveSubsystem, PathWeaverConstants.firstPathOld3Ball, true).withTimeout(
-            1.8),
+        new FollowTrajectory(driveSubsystem, PathWeaverConstants.firstPathOld3Ball, true),
 
         // 2. Intakes for a while to suck the ball in
         new IntakeWithTower(intakeSubsystem, towerSubsystem).withTimeout(5),
 
         // 3. Goes back towards the hoop while bumping an enemy ball and revving up the shooter
-        new ParallelCommandGroup(
+        new ParallelDeadlineGroup(
             new FollowTrajectory(driveSubsystem, PathWeaverConstants.secondPathOld3Ball, false),
             new RunCommand(() -> shooterSubsystem.setShooterRPM(
                 ShooterConstants.bottomMotorValues[0][1], // Sets the RPMs for 5.5 feet away
                 ShooterConstants.topMotorValues[0][1]
             ))
-        ).withTimeout(2.9),
+        ),
 
         // 4. Shoots two balls
         new AutoShoot(shooterSubsystem, towerSubsystem, LimelightSubsystem.getInstance(),
             driveSubsystem, ledsSubsystem).withTimeout(1.9),
 
         // 5. Goes to pick up the third ball
-        new ParallelCommandGroup(
+        new ParallelDeadlineGroup(
             new FollowTrajectory(driveSubsystem, PathWeaverConstants.thirdPathOld3Ball, false),
             new IntakeWithTower(intakeSubsystem, towerSubsystem)
-        ).withTimeout(1.3),
+        ),
 
         // 6. Goes closer to the tower while reving up the shooter
-        new ParallelCommandGroup(
+        new ParallelDeadlineGroup(
             new FollowTrajectory(driveSubsystem, PathWeaverConstants.fourthPathOld3Ball, false),
             new RunCommand(() -> shooterSubsystem.setShooterRPM(
                 ShooterConstants.bottomMotorValues[0][1], // Sets the RPMs for 5.5 feet away
                 ShooterConstants.topMotorValues[0][1]
             ))
-        ).withTimeout(1.2),
+        ),
 
         // 7. Shoots the third ball
         new AutoShoot(shooterSubsystem, towerSubsystem, LimelightSubsystem.getInstance(),
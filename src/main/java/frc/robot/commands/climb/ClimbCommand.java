@@ -6,9 +6,10 @@ package frc.robot.commands.climb;
 
 import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
-import edu.wpi.first.wpilibj2.command.WaitCommand;
 import frc.robot.Constants.ClimbConstants;
+import frc.robot.commands.climb.WaitForSwing.Phase;
 import frc.robot.subsystems.ClimbSubsystem;
+import java.util.function.DoubleSupplier;
 
 // NOTE:  Consider using this command inline, rather than writing a subclass.  For more
 // information, see:
@@ -17,17 +18,19 @@ public class ClimbCommand extends SequentialCommandGroup {
 
   /**
    * Command to climb
+   *
+   * @param pitchDegrees robot pitch from the navX, for watching the swing
    */
-  public ClimbCommand(ClimbSubsystem climbSubsystem) {
+  public ClimbCommand(ClimbSubsystem climbSubsystem, DoubleSupplier pitchDegrees) {
     
     addCommands(
       // Starts assuming the telescoping arms are slightly above the first bar
       new InstantCommand(climbSubsystem::resetEncoders),
       new ClimbSetPos(climbSubsystem, ClimbConstants.kSlightlyBelowBar - ClimbConstants.kClimbMaxPosConfirmationExtraHeight),
-      new ClimbNextBar(climbSubsystem),
-      new WaitCommand(.5),
-      new ClimbNextBar(climbSubsystem),
-      new WaitCommand(.5)
+      new ClimbNextBar(climbSubsystem, pitchDegrees),
+      new WaitForSwing(pitchDegrees, Phase.kSettled).withTimeout(.5),
+      new ClimbNextBar(climbSubsystem, pitchDegrees),
+      new WaitForSwing(pitchDegrees, Phase.kSettled).withTimeout(.5)
     );
   }
 }
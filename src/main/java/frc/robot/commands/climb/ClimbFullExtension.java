@@ -21,8 +21,7 @@ public class ClimbFullExtension extends CommandBase {
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
-    m_climb.setLeftHookToFullExtension();
-    m_climb.setRightHookToFullExtension();
+    m_climb.setHooksToFullExtension();
   }
 
   // Called once the command ends or is interrupted.
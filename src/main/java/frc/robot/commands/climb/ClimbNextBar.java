@@ -1,31 +1,42 @@
 package frc.robot.commands.climb;
 
-import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj2.command.RunCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
-import edu.wpi.first.wpilibj2.command.WaitCommand;
+import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
 import frc.robot.Constants.ClimbConstants;
+import frc.robot.commands.climb.WaitForSwing.Phase;
 import frc.robot.subsystems.ClimbSubsystem;
+import java.util.function.DoubleSupplier;
 
 public class ClimbNextBar extends SequentialCommandGroup {
 
-  public ClimbNextBar(ClimbSubsystem climb){
+  /**
+   * Climbs from one bar to the next. Each step waits for the sensors to say the last one is done,
+   * with the old fixed wait as a timeout in case they never do.
+   *
+   * @param climb        the climb
+   * @param pitchDegrees robot pitch from the navX, for watching the swing
+   */
+  public ClimbNextBar(ClimbSubsystem climb, DoubleSupplier pitchDegrees){
     addCommands(
         // Raises the hooks so that the static hooks are on the bar
         new ClimbSetPos(climb, ClimbConstants.kSlightlyAboveBar + ClimbConstants.kClimbMaxPosConfirmationExtraHeight),
-        // Waits a little bit
-        new WaitCommand(1),
+        // Waits for the static hooks to take the robot
+        new WaitForSwing(pitchDegrees, Phase.kSettled).withTimeout(1),
         // Sets the arms back
         new ClimbAngled(climb),
-        // Waits a little bit
-        new WaitCommand(1),
+        // Waits for the arms to get there
+        new SequentialCommandGroup(
+            new WaitUntilCommand(climb::isSolenoidSettled),
+            new WaitForSwing(pitchDegrees, Phase.kSettled)
+        ).withTimeout(1),
         // Extends the arms to above the bar
         new ClimbSetPos(climb, ClimbConstants.kClimbMaxHeight + ClimbConstants.kClimbMaxPosConfirmationExtraHeight),
-        // Brings the arms back to the bar
-        new WaitCommand(1),
+        // Brings the arms back to the bar while the robot swings towards it
+        new WaitForSwing(pitchDegrees, Phase.kTowardNextBar).withTimeout(1),
         new ClimbVertical(climb),
-         // Waits a little bit
-        new WaitCommand(1.5),
+        new WaitUntilCommand(climb::isSolenoidSettled).withTimeout(1.5),
+        // Takes up the slack until the hooks catch the bar
+        new ClimbUntilLatched(climb).withTimeout(1.5),
         // Pulls the robot up to the next bar
         new ClimbSetPos(climb, ClimbConstants.kSlightlyBelowBar - ClimbConstants.kClimbMaxPosConfirmationExtraHeight)
         // Static hooks click, done with this bar
@@ -24,19 +24,15 @@ public class ClimbSetPos extends CommandBase {
 
   @Override
   public void execute() {
+    climbSubsystem.setDesiredHookHeights(motorPos);
+
     if (climbSubsystem.getLeftHookHeight() > motorPos && climbSubsystem.getIsLeftLimitSwitchPressed()) {
       climbSubsystem.setLeftMotorOutputManual(0);
     }
-    else {
-      climbSubsystem.setDesiredLeftHookHeight(motorPos);
-    }
 
     if (climbSubsystem.getRightHookHeight() > motorPos && climbSubsystem.getIsRightLimitSwitchPressed()) {
       climbSubsystem.setRightMotorOutputManual(0);
     }
-    else {
-      climbSubsystem.setDesiredRightHookHeight(motorPos);
-    }
   }
 
   @Override
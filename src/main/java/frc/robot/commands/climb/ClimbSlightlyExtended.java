@@ -21,8 +21,7 @@ public class ClimbSlightlyExtended extends CommandBase {
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
-    m_climb.setDesiredLeftHookHeight(ClimbConstants.kClimbSlightlyExtendedHeight);
-    m_climb.setDesiredRightHookHeight(ClimbConstants.kClimbSlightlyExtendedHeight);
+    m_climb.setDesiredHookHeights(ClimbConstants.kClimbSlightlyExtendedHeight);
   }
 
   // Called once the command ends or is interrupted.
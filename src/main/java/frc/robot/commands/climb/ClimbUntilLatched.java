@@ -0,0 +1,40 @@
+package frc.robot.commands.climb;
+
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.ClimbConstants;
+import frc.robot.subsystems.ClimbSubsystem;
+
+/**
+ * Slowly pulls both arms in until the motor current jumps, which means the hooks caught the bar
+ * and are starting to take the robot's weight. Use withTimeout() in case the current never gets
+ * there.
+ */
+public class ClimbUntilLatched extends CommandBase {
+
+  private final ClimbSubsystem m_climb;
+
+  public ClimbUntilLatched(ClimbSubsystem climb) {
+    m_climb = climb;
+    addRequirements(climb);
+  }
+
+  // Called every time the scheduler runs while the command is scheduled.
+  @Override
+  public void execute() {
+    m_climb.setLeftMotorOutputManual(ClimbConstants.kClimbLatchOutput);
+    m_climb.setRightMotorOutputManual(ClimbConstants.kClimbLatchOutput);
+  }
+
+  // Called once the command ends or is interrupted.
+  @Override
+  public void end(boolean interrupted) {
+    m_climb.setLeftMotorOutputManual(0);
+    m_climb.setRightMotorOutputManual(0);
+  }
+
+  // Returns true when the command should end.
+  @Override
+  public boolean isFinished() {
+    return m_climb.isHookLatched();
+  }
+}
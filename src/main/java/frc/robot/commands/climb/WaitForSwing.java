@@ -0,0 +1,88 @@
+package frc.robot.commands.climb;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.ClimbConstants;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Waits for the robot to be at the right part of its swing while it hangs from a bar, from the
+ * navX pitch. Doesn't require anything, so it can sit between climb steps. Use withTimeout() so
+ * the climb keeps going if the swing never gets there.
+ */
+public class WaitForSwing extends CommandBase {
+
+  public enum Phase {
+    /** The robot has stopped swinging. */
+    kSettled,
+    /** The robot is swinging towards the next bar, or not swinging at all. */
+    kTowardNextBar
+  }
+
+  private final DoubleSupplier m_pitchDegrees;
+  private final Phase m_phase;
+
+  private double m_lastPitch;
+  private double m_lastTimestamp;
+  private double m_pitchRate;
+  private boolean m_hasRate;
+  private int m_settledCycles;
+
+  /**
+   * Creates a new WaitForSwing.
+   *
+   * @param pitchDegrees robot pitch, in degrees
+   * @param phase        which part of the swing to wait for
+   */
+  public WaitForSwing(DoubleSupplier pitchDegrees, Phase phase) {
+    m_pitchDegrees = pitchDegrees;
+    m_phase = phase;
+  }
+
+  @Override
+  public void initialize() {
+    m_lastPitch = m_pitchDegrees.getAsDouble();
+    m_lastTimestamp = Timer.getFPGATimestamp();
+    m_pitchRate = 0;
+    m_hasRate = false;
+    m_settledCycles = 0;
+  }
+
+  @Override
+  public void execute() {
+    double pitch = m_pitchDegrees.getAsDouble();
+    double timestamp = Timer.getFPGATimestamp();
+    double dt = timestamp - m_lastTimestamp;
+    if (dt > 0) {
+      double rate = (pitch - m_lastPitch) / dt;
+      if (m_hasRate) {
+        // Single pole low pass on the pitch rate
+        m_pitchRate += (rate - m_pitchRate)
+            * (1 - Math.exp(-dt / ClimbConstants.kClimbSwingRateFilterSeconds));
+      } else {
+        // Start the filter from the first real rate, not from 0, or it reads as settled right away
+        m_pitchRate = rate;
+        m_hasRate = true;
+      }
+      if (Math.abs(m_pitchRate) < ClimbConstants.kClimbSwingSettledDegreesPerSecond) {
+        m_settledCycles++;
+      } else {
+        m_settledCycles = 0;
+      }
+    }
+    m_lastPitch = pitch;
+    m_lastTimestamp = timestamp;
+  }
+
+  @Override
+  public boolean isFinished() {
+    if (!m_hasRate) {
+      return false;
+    }
+    boolean settled = m_settledCycles >= ClimbConstants.kClimbSwingSettledCycles;
+    if (m_phase == Phase.kSettled) {
+      return settled;
+    }
+    return settled || m_pitchRate * ClimbConstants.kClimbSwingTowardNextBarSign > 0;
+  }
+}
@@ -4,13 +4,10 @@
 
 package frc.robot.commands.shooter;
 
-import edu.wpi.first.math.controller.ProfiledPIDController;
-import edu.wpi.first.math.controller.SimpleMotorFeedforward;
-import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import edu.wpi.first.wpilibj2.command.button.JoystickButton;
-import frc.robot.Constants.ShooterConstants;
 import frc.robot.Constants.TowerConstants;
+import frc.robot.subsystems.AimingController;
 import frc.robot.subsystems.DriveSubsystem;
 import frc.robot.subsystems.LEDsSubsystem;
 import frc.robot.subsystems.LimelightSubsystem;
@@ -25,20 +22,10 @@ public class EmergencyShoot extends CommandBase {
   private final TowerSubsystem towerSubsystem;
   private final LimelightSubsystem limelight;
   private final DriveSubsystem driveSubsystem;
+  private final AimingController aimingController;
   private final DoubleSupplier leftStickY;
   private final DoubleSupplier leftStickX;
   private final LEDsSubsystem LEDS;
-  private final ProfiledPIDController turnProfiledPIDController = new ProfiledPIDController(
-      ShooterConstants.turnkP,
-      ShooterConstants.turnkI,
-      ShooterConstants.turnkD,
-      new TrapezoidProfile.Constraints(
-          ShooterConstants.kMaxTurnAngularSpeedRadiansPerSecond,
-          ShooterConstants.kMaxTurnAngularAccelerationRadiansPerSecondSquared)
-  );
-  private final SimpleMotorFeedforward turnFeedforward = new SimpleMotorFeedforward(
-      ShooterConstants.ksTurning, ShooterConstants.kvTurning
-  );
 
   /**
    * Creates a new Shoot.
@@ -52,6 +39,7 @@ public class EmergencyShoot extends CommandBase {
     this.towerSubsystem = towerSubsystem;
     this.limelight = limelight;
     this.driveSubsystem = driveSubsystem;
+    this.aimingController = driveSubsystem.getAimingController();
     this.leftStickY = leftStickY;
     this.leftStickX = leftStickX;
     this.LEDS = leds;
@@ -60,16 +48,14 @@ public class EmergencyShoot extends CommandBase {
 
   @Override
   public void initialize() {
+    aimingController.reset();
     shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
+        limelight.getBottomShooterRPM(),
+        limelight.getTopShooterRPM()
     );
 
-    double headingError = limelight.getTargetOffsetX();
-
-    double turnRobotOutput =
-        turnProfiledPIDController.calculate(headingError, 0)
-            + turnFeedforward.calculate(turnProfiledPIDController.getSetpoint().velocity);
+    double headingError = aimingController.getHeadingErrorDegrees();
+    double turnRobotOutput = aimingController.calculate();
 
     driveSubsystem.drive(leftStickY.getAsDouble(), leftStickX.getAsDouble(), turnRobotOutput, true);
 
@@ -78,28 +64,24 @@ public class EmergencyShoot extends CommandBase {
   @Override
   public void execute() {
     shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
+        limelight.getBottomShooterRPM(),
+        limelight.getTopShooterRPM()
     );
 
-    double headingError = limelight.getTargetOffsetX();
-
-    // If heading error isn't off by much, it won't move
-    if (Math.abs(headingError) < 1) headingError = 0;
-
-    double turnRobotOutput =
-        turnProfiledPIDController.calculate(headingError, 0)
-            + turnFeedforward.calculate(turnProfiledPIDController.getSetpoint().velocity);
+    double headingError = aimingController.getHeadingErrorDegrees();
+    double turnRobotOutput = aimingController.calculate();
 
     driveSubsystem.drive(-1 * leftStickY.getAsDouble(), -1 * leftStickX.getAsDouble(), turnRobotOutput, true);
 
-    if (Math.abs(headingError) < 3) {
+    // Emergency shooting feeds even without a vision fix, like it did when it aimed on raw tx.
+    boolean isAimed = !aimingController.hasSetpoint() || Math.abs(headingError) < 3;
+    if (isAimed) {
       towerSubsystem.setTowerMotorsSpeed(TowerConstants.towerMotorSpeed);
     } else {
       towerSubsystem.setTowerMotorsSpeed(0);
     }
 
-    if (headingError < 3 && shooterSubsystem.isShooterWithinAcceptableError()) {
+    if (isAimed && shooterSubsystem.isShooterWithinAcceptableError()) {
       LEDS.setLEDsReadyToShoot();
     } else {
       LEDS.setLEDsShooterLiningUp();
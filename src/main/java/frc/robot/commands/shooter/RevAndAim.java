@@ -4,12 +4,9 @@
 
 package frc.robot.commands.shooter;
 
-import edu.wpi.first.math.controller.ProfiledPIDController;
-import edu.wpi.first.math.controller.SimpleMotorFeedforward;
-import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.Constants.DriveConstants;
-import frc.robot.Constants.ShooterConstants;
+import frc.robot.subsystems.AimingController;
 import frc.robot.subsystems.DriveSubsystem;
 import frc.robot.subsystems.LEDsSubsystem;
 import frc.robot.subsystems.LimelightSubsystem;
@@ -21,21 +18,11 @@ public class RevAndAim extends CommandBase {
   private final ShooterSubsystem shooterSubsystem;
   private final LimelightSubsystem limelight;
   private final DriveSubsystem driveSubsystem;
+  private final AimingController aimingController;
   private final DoubleSupplier leftStickY;
   private final DoubleSupplier leftStickX;
   private final LEDsSubsystem LEDS;
 
-  private final ProfiledPIDController turnProfiledPIDController = new ProfiledPIDController(
-      ShooterConstants.turnkP,
-      ShooterConstants.turnkI,
-      ShooterConstants.turnkD,
-      new TrapezoidProfile.Constraints(
-          ShooterConstants.kMaxTurnAngularSpeedRadiansPerSecond,
-          ShooterConstants.kMaxTurnAngularAccelerationRadiansPerSecondSquared)
-  );
-  private final SimpleMotorFeedforward turnFeedforward = new SimpleMotorFeedforward(
-      ShooterConstants.ksTurning, ShooterConstants.kvTurning
-  );
   private double headingError = 0;
 
   /**
@@ -49,6 +36,7 @@ public class RevAndAim extends CommandBase {
     this.shooterSubsystem = shooterSubsystem;
     this.limelight = limelight;
     this.driveSubsystem = driveSubsystem;
+    this.aimingController = driveSubsystem.getAimingController();
     this.leftStickY = leftStickY;
     this.leftStickX = leftStickX;
     this.LEDS = leds;
@@ -57,31 +45,18 @@ public class RevAndAim extends CommandBase {
 
   @Override
   public void initialize() {
-    shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
-    );
-
-    headingError = limelight.getTargetOffsetX();
+    aimingController.reset();
   }
 
   @Override
   public void execute() {
     shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
+        limelight.getBottomShooterRPM(),
+        limelight.getTopShooterRPM()
     );
 
-    headingError = limelight.getTargetOffsetX();
-
-    // If heading error isn't off by much, it won't move
-    if (Math.abs(headingError) < 1) {
-      headingError = 0;
-    }
-
-    double turnRobotOutput =
-        turnProfiledPIDController.calculate(headingError, 0)
-            + turnFeedforward.calculate(turnProfiledPIDController.getSetpoint().velocity);
+    headingError = aimingController.getHeadingErrorDegrees();
+    double turnRobotOutput = aimingController.calculate();
 
     driveSubsystem.drive(leftStickY.getAsDouble() * -DriveConstants.kMaxSpeedMetersPerSecond,
         leftStickX.getAsDouble() * -DriveConstants.kMaxSpeedMetersPerSecond, turnRobotOutput, true);
@@ -4,13 +4,9 @@
 
 package frc.robot.commands.shooter;
 
-import edu.wpi.first.math.controller.ProfiledPIDController;
-import edu.wpi.first.math.controller.SimpleMotorFeedforward;
-import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.Constants.DriveConstants;
-import frc.robot.Constants.ShooterConstants;
 import frc.robot.Constants.TowerConstants;
 import frc.robot.subsystems.*;
 
@@ -22,26 +18,14 @@ public class Shoot extends CommandBase {
   private final TowerSubsystem towerSubsystem;
   private final LimelightSubsystem limelight;
   private final DriveSubsystem driveSubsystem;
+  private final AimingController aimingController;
   private final IntakeSubsystem intakeSubsystem;
   private final DoubleSupplier leftStickY;
   private final DoubleSupplier leftStickX;
   private final LEDsSubsystem LEDS;
   private int overshoot_elimination_counter = 0;
 
-  private final ProfiledPIDController turnProfiledPIDController = new ProfiledPIDController(
-      ShooterConstants.turnkP,
-      ShooterConstants.turnkI,
-      ShooterConstants.turnkD,
-      new TrapezoidProfile.Constraints(
-          ShooterConstants.kMaxTurnAngularSpeedRadiansPerSecond,
-          ShooterConstants.kMaxTurnAngularAccelerationRadiansPerSecondSquared)
-  );
-  private final SimpleMotorFeedforward turnFeedforward = new SimpleMotorFeedforward(
-      ShooterConstants.ksTurning, ShooterConstants.kvTurning
-  );
-
   private int initialBallCount = 0;
-  private int ballcount = 0;
   private double towerSpeed = TowerConstants.towerMotorSpeed;
   private double headingError = 0;
   private boolean shotOne = false;
@@ -59,6 +43,7 @@ public class Shoot extends CommandBase {
     this.towerSubsystem = towerSubsystem;
     this.limelight = limelight;
     this.driveSubsystem = driveSubsystem;
+    this.aimingController = driveSubsystem.getAimingController();
     this.intakeSubsystem = intakeSubsystem;
     this.leftStickY = leftStickY;
     this.leftStickX = leftStickX;
@@ -68,31 +53,22 @@ public class Shoot extends CommandBase {
 
   @Override
   public void initialize() {
+    aimingController.reset();
     shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
+        limelight.getBottomShooterRPM(),
+        limelight.getTopShooterRPM()
     );
 
-    headingError = limelight.getTargetOffsetX();
-
-//    double turnRobotOutput =
-//        turnProfiledPIDController.calculate(headingError, 0)
-//            + turnFeedforward.calculate(turnProfiledPIDController.getSetpoint().velocity);
+    headingError = aimingController.getHeadingErrorDegrees();
 
-    if (towerSubsystem.getIsBallInBottom()){
-      ballcount += 1;
-    }
-    if (towerSubsystem.getIsBallInTop()){
-      ballcount += 1;
-    }
-    initialBallCount = ballcount;
+    initialBallCount = towerSubsystem.getBallCount();
   }
 
   @Override
   public void execute() {
     shooterSubsystem.setShooterRPM(
-        limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-        limelight.calculateRPM(ShooterConstants.topMotorValues)
+        limelight.getBottomShooterRPM(),
+        limelight.getTopShooterRPM()
     );
 
 //    old:
@@ -117,20 +93,14 @@ public class Shoot extends CommandBase {
 
 //    towerSpeed = (shotOne ? 0.34 : TowerConstants.towerMotorSpeed);
 
-    headingError = limelight.getTargetOffsetX();
-
-    // If heading error isn't off by much, it won't move
-    if (Math.abs(headingError) < 1) headingError = 0;
-
-    double turnRobotOutput =
-        turnProfiledPIDController.calculate(headingError, 0)
-            + turnFeedforward.calculate(turnProfiledPIDController.getSetpoint().velocity);
+    headingError = aimingController.getHeadingErrorDegrees();
+    double turnRobotOutput = aimingController.calculate();
 
     driveSubsystem.drive(leftStickY.getAsDouble() * -DriveConstants.kMaxSpeedMetersPerSecond, leftStickX.getAsDouble() * -DriveConstants.kMaxSpeedMetersPerSecond, turnRobotOutput, true);
     SmartDashboard.putBoolean("Ready to shoot", isReadyToShoot());
+    towerSubsystem.feedShooter(limelight.hasValidTarget(), getTimeToReadySeconds());
     if (isReadyToShoot()) {
       LEDS.setLEDsReadyToShoot();
-      towerSubsystem.setTowerMotorsSpeed(TowerConstants.towerMotorSpeed);
 //      towerSubsystem.setTopMotorOutputManual(TowerConstants.towerMotorSpeed);
 //      Timer.delay(0.25);
 //      towerSubsystem.setBottomMotorOutputManual(TowerConstants.towerMotorSpeed);
@@ -142,10 +112,8 @@ public class Shoot extends CommandBase {
 //      towerSubsystem.setBottomMotorOutputManual(TowerConstants.towerMotorSpeed - 0.1);
     } else if (!limelight.hasValidTarget()) {
       LEDS.setLEDsNoValidTarget();
-      towerSubsystem.setTowerMotorsSpeed(0);
     } else {
       LEDS.setLEDsShooterLiningUp();
-      towerSubsystem.setTowerMotorsSpeed(0);
     }
 
     intakeSubsystem.setMotorCustomPower(0.15);
@@ -175,6 +143,15 @@ public class Shoot extends CommandBase {
 //    SmartDashboard.putBoolean("overshoot_counter: ", overshoot_elimination_counter > 2);
 //    SmartDashboard.putNumber("limelight offset: ", Math.abs(limelight.getTargetOffsetX()));
 //    return shooterSubsystem.isShooterWithinAcceptableError();
-    return (((Math.abs(headingError) < 3) && (limelight.hasValidTarget()) && shooterSubsystem.isShooterWithinAcceptableError()));
+    return limelight.hasValidTarget()
+        && getTimeToReadySeconds() <= TowerConstants.kBallTransitTimeSeconds;
+  }
+
+  // Start the tower early enough that the ball gets to the wheels right as the wheels and the
+  // heading settle.
+  private double getTimeToReadySeconds() {
+    return Math.max(
+        shooterSubsystem.getTimeToReadySeconds(),
+        driveSubsystem.getTimeToHeadingSeconds(headingError, 3));
   }
 }
@@ -4,9 +4,6 @@
 
 package frc.robot.commands.shooter;
 
-import  edu.wpi.first.math.controller.ProfiledPIDController;
-import edu.wpi.first.math.controller.SimpleMotorFeedforward;
-import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.Constants.DriveConstants;
@@ -23,32 +20,18 @@ public class TeleopAutoShoot extends CommandBase {
   private final TowerSubsystem towerSubsystem;
   private final LimelightSubsystem limelight;
   private final DriveSubsystem driveSubsystem;
+  private final AimingController aimingController;
   private final DoubleSupplier leftStickY;
   private final DoubleSupplier leftStickX;
   private final DoubleSupplier rightStickY;
   private final BooleanSupplier isFieldRelative;
   private final LEDsSubsystem LEDS;
 
-  private final ProfiledPIDController turnProfiledPIDController = new ProfiledPIDController(
-      ShooterConstants.turnkP,
-      ShooterConstants.turnkI,
-      ShooterConstants.turnkD,
-      new TrapezoidProfile.Constraints(
-          ShooterConstants.kMaxTurnAngularSpeedRadiansPerSecond,
-          ShooterConstants.kMaxTurnAngularAccelerationRadiansPerSecondSquared)
-  );
-  private final SimpleMotorFeedforward turnFeedforward = new SimpleMotorFeedforward(
-      ShooterConstants.ksTurning, ShooterConstants.kvTurning
-  );
-
-  private int initialBallCount = 0;
-  private int ballcount = 0;
   private double towerSpeed = TowerConstants.towerMotorSpeed;
   private double headingError = 0;
 //  private boolean shotOne = false;
-//  IDK if we will need this, but it could be nice to have...
-  private boolean[] arrayOfBalls = new boolean[2];
   private double currentDriveSpeed;
+  private final MovingShotSolver shotSolver;
   /**
    * Creates a new TeleopAutoShoot.
    */
@@ -61,67 +44,67 @@ public class TeleopAutoShoot extends CommandBase {
     this.towerSubsystem = towerSubsystem;
     this.limelight = limelight;
     this.driveSubsystem = driveSubsystem;
+    this.aimingController = driveSubsystem.getAimingController();
     this.leftStickY = leftStickY;
     this.leftStickX = leftStickX;
     this.rightStickY = rightStickY;
     this.isFieldRelative = isFieldRelative;
     this.LEDS = leds;
+    this.shotSolver = new MovingShotSolver(limelight::getShotMap);
     addRequirements(shooterSubsystem, limelight, leds, driveSubsystem);
   }
 
   @Override
   public void initialize() {
-    if (towerSubsystem.getIsBallInBottom()){
-      ballcount += 1;
-      arrayOfBalls[0] = true;
-    }
-    if (towerSubsystem.getIsBallInTop()){
-      ballcount += 1;
-      arrayOfBalls[1] = true;
-    }
-    initialBallCount = ballcount;
+    aimingController.reset();
   }
 
   @Override
   public void execute() {
-    updateBallCount();
 //    if (ballcount < 2) {
 //    If speed is faster than we think is OK to shoot (TUNE) or limelight is not in range or there are no balls in the tower:
 //    drive normally
-//    FIXME: tune speed
-    if ((driveSubsystem.speed() > 0.5) || (!isLimelightInRange()) || (ballcount == 0)) {
+    if ((driveSubsystem.speed() > ShooterConstants.kMaxShootingSpeedMetersPerSecond) || (!isLimelightInRange()) || (towerSubsystem.getBallCount() == 0)) {
       driveSubsystem.drive(leftStickY.getAsDouble() * -DriveConstants.kMaxSpeedMetersPerSecond, leftStickX.getAsDouble() * -DriveConstants.kMaxSpeedMetersPerSecond, rightStickY.getAsDouble() * -DriveConstants.kMaxRotationalSpeed, isFieldRelative.getAsBoolean());
     // if the speed is slow and limelight is in range and there is at least 1 ball in:
-    } else if ((driveSubsystem.speed() <= 0.5) && (isLimelightInRange()) && (ballcount > 0)) {
-      shooterSubsystem.setShooterRPM(
-              limelight.calculateRPM(ShooterConstants.bottomMotorValues),
-              limelight.calculateRPM(ShooterConstants.topMotorValues)
-      );
-
-      // get heading error
-      headingError = limelight.getTargetOffsetX();
-
-      // If heading error isn't off by much, it won't move
-      if (Math.abs(headingError) < 1) headingError = 0;
-
-      // calculate turn
-      double turnRobotOutput =
-              turnProfiledPIDController.calculate(headingError, 0)
-                      + turnFeedforward.calculate(turnProfiledPIDController.getSetpoint().velocity);
+    } else {
+      if (ShooterConstants.kCameraForwardOffsetMeasured && ShooterConstants.kTimeOfFlightMeasured) {
+        // Lead the shot by the robot's velocity so it can shoot while strafing.
+        shotSolver.solve(
+                limelight.calculateDistance(),
+                limelight.getTargetOffsetX(),
+                driveSubsystem.getPose().getRotation().getRadians(),
+                driveSubsystem.getFieldVelocityX(),
+                driveSubsystem.getFieldVelocityY());
+        shooterSubsystem.setShooterRPM(
+                shotSolver.getBottomRPM(),
+                shotSolver.getTopRPM()
+        );
+
+        // aim at the virtual target instead of the hub
+        aimingController.setLeadDegrees(shotSolver.getLeadAngleDegrees());
+      } else {
+        // The solver's time of flight and camera position are placeholders, aim at the hub.
+        shooterSubsystem.setShooterRPM(
+                limelight.getBottomShooterRPM(),
+                limelight.getTopShooterRPM()
+        );
+        aimingController.setLeadDegrees(0);
+      }
+      headingError = aimingController.getHeadingErrorDegrees();
+      double turnRobotOutput = aimingController.calculate();
 
       // do turn
       driveSubsystem.drive(leftStickY.getAsDouble() * -DriveConstants.kMaxSpeedMetersPerSecond, leftStickX.getAsDouble() * -DriveConstants.kMaxSpeedMetersPerSecond, turnRobotOutput, isFieldRelative.getAsBoolean());
       // update shuffleboard... comment out?
 //      SmartDashboard.putBoolean("Ready to shoot", isReadyToShoot());
+      towerSubsystem.feedShooter(limelight.hasValidTarget(), getTimeToReadySeconds());
       if (isReadyToShoot()) {
         LEDS.setLEDsReadyToShoot();
-        towerSubsystem.setTowerMotorsSpeed(TowerConstants.towerMotorSpeed);
       } else if (!limelight.hasValidTarget()) {
         LEDS.setLEDsNoValidTarget();
-        towerSubsystem.setTowerMotorsSpeed(0);
       } else {
         LEDS.setLEDsShooterLiningUp();
-        towerSubsystem.setTowerMotorsSpeed(0);
       }
     }
   }
@@ -148,19 +131,11 @@ public class TeleopAutoShoot extends CommandBase {
     return (limelight.hasValidTarget() && (limelight.calculateDistance() < 13));
   }
 
-  private void updateBallCount() {
-    ballcount = 0;
-    if (towerSubsystem.getIsBallInBottom()) {
-      ballcount += 1;
-      arrayOfBalls[0] = true;
-    } else {
-      arrayOfBalls[0] = false;
-    }
-    if (towerSubsystem.getIsBallInTop()){
-      ballcount += 1;
-      arrayOfBalls[1] = true;
-    } else {
-      arrayOfBalls[1] = false;
-    }
+  // Start the tower early enough that the ball gets to the wheels right as the wheels and the
+  // heading settle.
+  private double getTimeToReadySeconds() {
+    return Math.max(
+        shooterSubsystem.getTimeToReadySeconds(),
+        driveSubsystem.getTimeToHeadingSeconds(headingError, 3));
   }
 }
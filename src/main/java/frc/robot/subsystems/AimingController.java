@@ -0,0 +1,126 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import frc.robot.Constants.ShooterConstants;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Turns the robot towards the hub for all the shooting commands. Each Limelight frame becomes a
+ * gyro heading to hold, using the heading from when the frame was taken, and the turn loop closes
+ * on the gyro instead of on tx. The camera only moves the setpoint, so its latency and frame rate
+ * don't end up inside the loop.
+ *
+ * <p>DriveSubsystem owns the one instance and feeds it frames; get it with
+ * DriveSubsystem.getAimingController().
+ */
+public class AimingController {
+
+  // Same gains the shooting commands used on tx, the error is still in degrees.
+  private final ProfiledPIDController m_turnController = new ProfiledPIDController(
+      ShooterConstants.turnkP,
+      ShooterConstants.turnkI,
+      ShooterConstants.turnkD,
+      new TrapezoidProfile.Constraints(
+          ShooterConstants.kMaxTurnAngularSpeedRadiansPerSecond,
+          ShooterConstants.kMaxTurnAngularAccelerationRadiansPerSecondSquared)
+  );
+  private final SimpleMotorFeedforward m_turnFeedforward = new SimpleMotorFeedforward(
+      ShooterConstants.ksTurning, ShooterConstants.kvTurning
+  );
+
+  private final OdometrySampleBuffer m_samples;
+  private final OdometrySampleBuffer.Sample m_sample = new OdometrySampleBuffer.Sample();
+  // Raw gyro angle in degrees, clockwise positive.
+  private final DoubleSupplier m_gyroAngle;
+
+  private boolean m_hasSetpoint = false;
+  private double m_hubGyroAngleDegrees = 0;
+  private double m_leadDegrees = 0;
+  private double m_lastCaptureTimestamp = -1;
+
+  /**
+   * Creates a new AimingController.
+   *
+   * @param samples   odometry history, for the gyro angle when a frame was taken
+   * @param gyroAngle raw gyro angle in degrees, clockwise positive
+   */
+  AimingController(OdometrySampleBuffer samples, DoubleSupplier gyroAngle) {
+    m_samples = samples;
+    m_gyroAngle = gyroAngle;
+  }
+
+  /**
+   * Moves the setpoint to a new vision fix. Frames that were already used are ignored.
+   *
+   * @param targetOffsetXDegrees Limelight tx, positive when the target is to the right
+   * @param captureTimestamp     FPGA time the frame was taken
+   */
+  void addVisionFix(double targetOffsetXDegrees, double captureTimestamp) {
+    if (captureTimestamp == m_lastCaptureTimestamp) {
+      return;
+    }
+    m_lastCaptureTimestamp = captureTimestamp;
+
+    double gyroAtCapture = m_samples.sampleAt(captureTimestamp, m_sample)
+        ? m_sample.gyroAngleDegrees
+        : m_gyroAngle.getAsDouble();
+    m_hubGyroAngleDegrees = gyroAtCapture + targetOffsetXDegrees;
+    m_hasSetpoint = true;
+  }
+
+  /**
+   * Starts over for a new command. Drops the old setpoint and lead, so nothing turns until the
+   * next vision fix.
+   */
+  public void reset() {
+    m_hasSetpoint = false;
+    m_leadDegrees = 0;
+    m_lastCaptureTimestamp = -1;
+    m_turnController.reset(0);
+  }
+
+  /**
+   * Aims off the hub, for shooting on the move.
+   *
+   * @param leadDegrees angle from the hub to the aim point, counterclockwise positive
+   */
+  public void setLeadDegrees(double leadDegrees) {
+    m_leadDegrees = leadDegrees;
+  }
+
+  public boolean hasSetpoint() {
+    return m_hasSetpoint;
+  }
+
+  /**
+   * Heading error to the aim point, from the gyro.
+   *
+   * @return error in degrees, in the same sense as Limelight tx, or NaN with no setpoint yet so
+   *     no tolerance check passes before there's a vision fix
+   */
+  public double getHeadingErrorDegrees() {
+    if (!m_hasSetpoint) {
+      return Double.NaN;
+    }
+    return m_hubGyroAngleDegrees - m_leadDegrees - m_gyroAngle.getAsDouble();
+  }
+
+  /**
+   * Calculates the rotation to pass to DriveSubsystem.drive().
+   *
+   * @return angular rate, counterclockwise positive
+   */
+  public double calculate() {
+    double headingError = getHeadingErrorDegrees();
+
+    // If heading error isn't off by much, or there's nothing to aim at yet, it won't move
+    if (!m_hasSetpoint || Math.abs(headingError) < ShooterConstants.kAimDeadbandDegrees) {
+      headingError = 0;
+    }
+
+    return m_turnController.calculate(headingError, 0)
+        + m_turnFeedforward.calculate(m_turnController.getSetpoint().velocity);
+  }
+}
@@ -0,0 +1,309 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.wpilibj.AsynchronousInterrupt;
+import edu.wpi.first.wpilibj.DigitalInput;
+import frc.robot.Constants.TowerConstants;
+
+/**
+ * Keeps track of the balls in the tower from the edges of the two beam breaks. Both sensors get an
+ * asynchronous interrupt, so edges are timestamped with FPGA time when they happen instead of
+ * whenever the next 20 ms loop polls the sensors, and short edges (a ball going through the top
+ * sensor into the shooter) can't be missed.
+ *
+ * <p>The sensors read false when a ball is in front of them, so a falling edge is a ball arriving
+ * and a rising edge is a ball leaving. While the tower runs forwards, a ball leaving the bottom
+ * sensor is in transit to the top sensor, and a ball leaving the top sensor has been shot. While
+ * the tower runs backwards the edges only update which sensors are blocked, and the count is
+ * rebuilt from the sensors once it runs forwards again.
+ *
+ * <p>The interrupt callbacks run on their own threads, so everything here is synchronized.
+ */
+public class BallTracker implements AutoCloseable {
+
+  private final DigitalInput m_bottomSensor;
+  private final DigitalInput m_topSensor;
+  private final AsynchronousInterrupt m_bottomInterrupt;
+  private final AsynchronousInterrupt m_topInterrupt;
+
+  private boolean m_ballAtBottom;
+  private boolean m_ballAtTop;
+  private int m_ballCount;
+  private boolean m_reversed = false;
+
+  // Times the balls between the sensors left the bottom sensor, oldest first.
+  private final double[] m_transitStartTimes = new double[TowerConstants.kMaxBalls];
+  private int m_ballsInTransit = 0;
+
+  private double m_bottomArrivalTimestamp = 0;
+  private double m_topArrivalTimestamp = 0;
+  private double m_lastTransitSeconds = Double.NaN;
+  private double m_averageTransitSeconds = Double.NaN;
+  private double m_lastTopDwellSeconds = Double.NaN;
+
+  private int m_shotCount = 0;
+  private double m_lastShotTimestamp = 0;
+
+  /**
+   * Creates a new BallTracker and starts listening to the sensors.
+   *
+   * @param bottomSensor bottom tower beam break
+   * @param topSensor    top tower beam break
+   */
+  public BallTracker(DigitalInput bottomSensor, DigitalInput topSensor) {
+    m_bottomSensor = bottomSensor;
+    m_topSensor = topSensor;
+    resync();
+
+    m_bottomInterrupt = new AsynchronousInterrupt(bottomSensor, this::onBottomEdge);
+    m_topInterrupt = new AsynchronousInterrupt(topSensor, this::onTopEdge);
+    m_bottomInterrupt.setInterruptEdges(true, true);
+    m_topInterrupt.setInterruptEdges(true, true);
+    m_bottomInterrupt.enable();
+    m_topInterrupt.enable();
+  }
+
+  private void onBottomEdge(boolean rising, boolean falling) {
+    double risingTimestamp = m_bottomInterrupt.getRisingTimestamp();
+    double fallingTimestamp = m_bottomInterrupt.getFallingTimestamp();
+    synchronized (this) {
+      // If both edges came in since the last callback, handle them in the order they happened.
+      if (rising && falling && risingTimestamp < fallingTimestamp) {
+        bottomCleared(risingTimestamp);
+        bottomBlocked(fallingTimestamp);
+      } else {
+        if (falling) {
+          bottomBlocked(fallingTimestamp);
+        }
+        if (rising) {
+          bottomCleared(risingTimestamp);
+        }
+      }
+    }
+  }
+
+  private void onTopEdge(boolean rising, boolean falling) {
+    double risingTimestamp = m_topInterrupt.getRisingTimestamp();
+    double fallingTimestamp = m_topInterrupt.getFallingTimestamp();
+    synchronized (this) {
+      if (rising && falling && risingTimestamp < fallingTimestamp) {
+        topCleared(risingTimestamp);
+        topBlocked(fallingTimestamp);
+      } else {
+        if (falling) {
+          topBlocked(fallingTimestamp);
+        }
+        if (rising) {
+          topCleared(risingTimestamp);
+        }
+      }
+    }
+  }
+
+  // A ball came in from the intake.
+  private void bottomBlocked(double timestamp) {
+    if (m_ballAtBottom) {
+      return;
+    }
+    m_ballAtBottom = true;
+    m_bottomArrivalTimestamp = timestamp;
+    if (!m_reversed) {
+      m_ballCount = Math.min(m_ballCount + 1, TowerConstants.kMaxBalls);
+    }
+  }
+
+  // A ball moved up into the tower.
+  private void bottomCleared(double timestamp) {
+    if (!m_ballAtBottom) {
+      return;
+    }
+    m_ballAtBottom = false;
+    if (!m_reversed && m_ballsInTransit < m_transitStartTimes.length) {
+      m_transitStartTimes[m_ballsInTransit++] = timestamp;
+    }
+  }
+
+  // A ball got to the top of the tower.
+  private void topBlocked(double timestamp) {
+    if (m_ballAtTop) {
+      return;
+    }
+    m_ballAtTop = true;
+    m_topArrivalTimestamp = timestamp;
+    if (m_reversed) {
+      return;
+    }
+    if (m_ballsInTransit > 0) {
+      m_lastTransitSeconds = timestamp - m_transitStartTimes[0];
+      m_averageTransitSeconds = Double.isNaN(m_averageTransitSeconds)
+          ? m_lastTransitSeconds
+          : m_averageTransitSeconds
+              + (m_lastTransitSeconds - m_averageTransitSeconds) * TowerConstants.kTransitAverageGain;
+      m_ballsInTransit--;
+      for (int i = 0; i < m_ballsInTransit; i++) {
+        m_transitStartTimes[i] = m_transitStartTimes[i + 1];
+      }
+    }
+    // We missed this ball coming in somehow, it's definitely here now.
+    m_ballCount = Math.max(m_ballCount, occupiedCount());
+  }
+
+  // A ball went into the shooter.
+  private void topCleared(double timestamp) {
+    if (!m_ballAtTop) {
+      return;
+    }
+    m_ballAtTop = false;
+    if (m_reversed) {
+      return;
+    }
+    m_lastTopDwellSeconds = timestamp - m_topArrivalTimestamp;
+    m_shotCount++;
+    m_lastShotTimestamp = timestamp;
+    m_ballCount = Math.max(m_ballCount - 1, occupiedCount());
+  }
+
+  private int occupiedCount() {
+    return (m_ballAtBottom ? 1 : 0) + m_ballsInTransit + (m_ballAtTop ? 1 : 0);
+  }
+
+  /**
+   * Throws away what we know and rebuilds it from the sensors. Any balls between the sensors are
+   * lost, so only do this when the tower has settled.
+   */
+  public synchronized void resync() {
+    m_ballAtBottom = !m_bottomSensor.get();
+    m_ballAtTop = !m_topSensor.get();
+    m_ballsInTransit = 0;
+    m_ballCount = occupiedCount();
+  }
+
+  /**
+   * Tells the tracker which way the tower is running. Going back to forwards rebuilds the count
+   * from the sensors, since balls may have been pushed back out of the robot.
+   *
+   * @param reversed whether either tower motor is running backwards
+   */
+  public synchronized void setReversed(boolean reversed) {
+    if (m_reversed && !reversed) {
+      resync();
+    }
+    m_reversed = reversed;
+  }
+
+  /**
+   * Gets the number of balls in the tower.
+   *
+   * @return number of balls, 0 to {@link TowerConstants#kMaxBalls}
+   */
+  public synchronized int getBallCount() {
+    return m_ballCount;
+  }
+
+  /**
+   * Gets whether there's a ball at the bottom sensor, as of the last edge.
+   *
+   * @return true if the bottom sensor is blocked
+   */
+  public synchronized boolean isBallAtBottom() {
+    return m_ballAtBottom;
+  }
+
+  /**
+   * Gets whether there's a ball at the top sensor, as of the last edge.
+   *
+   * @return true if the top sensor is blocked
+   */
+  public synchronized boolean isBallAtTop() {
+    return m_ballAtTop;
+  }
+
+  /**
+   * Gets the number of balls that left the bottom sensor and haven't reached the top one yet.
+   *
+   * @return balls between the sensors
+   */
+  public synchronized int getBallsInTransit() {
+    return m_ballsInTransit;
+  }
+
+  /**
+   * Gets whether there's a ball at the bottom sensor or on its way up to the top one, read together
+   * so an edge can't land in between.
+   *
+   * @return true if there's a ball below the top sensor
+   */
+  public synchronized boolean hasBallBelowTop() {
+    return m_ballAtBottom || m_ballsInTransit > 0;
+  }
+
+  /**
+   * Gets the FPGA time the ball at the bottom sensor got there.
+   *
+   * @return timestamp in seconds, only meaningful while {@link #isBallAtBottom()}
+   */
+  public synchronized double getBottomArrivalTimestamp() {
+    return m_bottomArrivalTimestamp;
+  }
+
+  /**
+   * Gets the FPGA time the ball at the top sensor got there.
+   *
+   * @return timestamp in seconds, only meaningful while {@link #isBallAtTop()}
+   */
+  public synchronized double getTopArrivalTimestamp() {
+    return m_topArrivalTimestamp;
+  }
+
+  /**
+   * Gets how long the last ball took from leaving the bottom sensor to reaching the top one.
+   *
+   * @return seconds, NaN if no ball has gone up the tower yet
+   */
+  public synchronized double getLastTransitSeconds() {
+    return m_lastTransitSeconds;
+  }
+
+  /**
+   * Gets the smoothed bottom to top transit time.
+   *
+   * @return seconds, NaN if no ball has gone up the tower yet
+   */
+  public synchronized double getAverageTransitSeconds() {
+    return m_averageTransitSeconds;
+  }
+
+  /**
+   * Gets how long the last shot ball sat in front of the top sensor, including the time the tower
+   * was waiting on the shooter.
+   *
+   * @return seconds, NaN if nothing has been shot yet
+   */
+  public synchronized double getLastTopDwellSeconds() {
+    return m_lastTopDwellSeconds;
+  }
+
+  /**
+   * Gets the number of balls that have gone into the shooter since the robot started. Watch for
+   * this changing to catch shots.
+   *
+   * @return shot count
+   */
+  public synchronized int getShotCount() {
+    return m_shotCount;
+  }
+
+  /**
+   * Gets the FPGA time the last ball left the top sensor.
+   *
+   * @return timestamp in seconds, 0 if nothing has been shot yet
+   */
+  public synchronized double getLastShotTimestamp() {
+    return m_lastShotTimestamp;
+  }
+
+  @Override
+  public void close() {
+    m_bottomInterrupt.close();
+    m_topInterrupt.close();
+  }
+}
@@ -0,0 +1,111 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary trajectory files, made from the PathWeaver JSON at build time by
+ * frc.robot.tools.TrajectoryConverter. Reading one is a memory map and a loop over doubles instead
+ * of a JSON parse.
+ *
+ * <p>The format is big endian: a 16 byte header of int magic number, int version, int state count
+ * and an unused int, then {@link #kFieldsPerState} doubles per state in the order time, x, y,
+ * heading (radians), velocity, acceleration, curvature.
+ */
+public final class BinaryTrajectory {
+
+  public static final int kMagic = 0x5452414A; // "TRAJ"
+  public static final int kVersion = 1;
+  public static final int kHeaderBytes = 16;
+  public static final int kFieldsPerState = 7;
+  public static final String kExtension = ".traj";
+
+  private static final String kJsonExtension = ".wpilib.json";
+
+  private BinaryTrajectory() {}
+
+  /**
+   * Gets where the binary version of a PathWeaver JSON file goes.
+   *
+   * @param jsonPath path to the .wpilib.json file
+   * @return path to the .traj file next to it
+   */
+  public static Path binaryPathFor(Path jsonPath) {
+    String name = jsonPath.getFileName().toString();
+    if (name.endsWith(kJsonExtension)) {
+      name = name.substring(0, name.length() - kJsonExtension.length());
+    }
+    return jsonPath.resolveSibling(name + kExtension);
+  }
+
+  /**
+   * Reads a binary trajectory file.
+   *
+   * @param path the .traj file
+   * @return the trajectory, with an unmodifiable state list
+   * @throws IOException if the file can't be read or isn't a trajectory file
+   */
+  public static Trajectory read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < kHeaderBytes || buffer.getInt() != kMagic) {
+        throw new IOException("Not a trajectory file: " + path);
+      }
+      int version = buffer.getInt();
+      if (version != kVersion) {
+        throw new IOException("Unsupported trajectory file version " + version + ": " + path);
+      }
+      int count = buffer.getInt();
+      buffer.position(kHeaderBytes);
+      if (count < 1 || buffer.remaining() < (long) count * kFieldsPerState * Double.BYTES) {
+        throw new IOException("Truncated trajectory file: " + path);
+      }
+
+      DoubleBuffer values = buffer.asDoubleBuffer();
+      List<Trajectory.State> states = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        double time = values.get();
+        double x = values.get();
+        double y = values.get();
+        double heading = values.get();
+        double velocity = values.get();
+        double acceleration = values.get();
+        double curvature = values.get();
+        states.add(new Trajectory.State(time, velocity, acceleration,
+            new Pose2d(x, y, new Rotation2d(heading)), curvature));
+      }
+      return new Trajectory(List.copyOf(states));
+    }
+  }
+
+  /**
+   * Writes a binary trajectory file.
+   *
+   * @param path   where to write it
+   * @param values {@link #kFieldsPerState} values per state, in file order
+   * @throws IOException if the file can't be written
+   */
+  public static void write(Path path, double[] values) throws IOException {
+    if (values.length == 0 || values.length % kFieldsPerState != 0) {
+      throw new IllegalArgumentException(
+          "Trajectory values must be a whole number of states, got " + values.length);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(kHeaderBytes + values.length * Double.BYTES);
+    buffer.putInt(kMagic);
+    buffer.putInt(kVersion);
+    buffer.putInt(values.length / kFieldsPerState);
+    buffer.putInt(0);
+    buffer.asDoubleBuffer().put(values);
+    Files.write(path, buffer.array());
+  }
+}
@@ -7,6 +7,7 @@ import com.ctre.phoenix.motorcontrol.can.TalonFXConfiguration;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
 import com.ctre.phoenix.sensors.CANCoder;
 import com.ctre.phoenix.sensors.CANCoderStatusFrame;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
@@ -14,6 +15,7 @@ import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj.DoubleSolenoid.Value;
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.ClimbConstants;
@@ -60,6 +62,9 @@ public class ClimbSubsystem extends SubsystemBase {
               ClimbConstants.kMaxClimbSpeedMetersPerSecond,
               ClimbConstants.kMaxClimbAccelerationMetersPerSecondSquared));
 
+  private boolean m_hooksOutOfSync = false;
+  private double m_lastSolenoidChangeTimestamp = 0;
+
   private final SimpleMotorFeedforward m_leftFeedForward = new SimpleMotorFeedforward(
       0.3,
       0.7,
@@ -209,6 +214,26 @@ public class ClimbSubsystem extends SubsystemBase {
     return true;
   }
 
+  /**
+   * Gets whether the climb piston has had time to finish moving since it was last switched.
+   *
+   * @return true if the climb is done going vertical or angled
+   */
+  public boolean isSolenoidSettled() {
+    return Timer.getFPGATimestamp() - m_lastSolenoidChangeTimestamp
+        >= ClimbConstants.kClimbSolenoidSettleSeconds;
+  }
+
+  /**
+   * Gets whether both climb motors are pulling hard enough that the hooks must have caught a bar.
+   *
+   * @return true if the hooks are latched
+   */
+  public boolean isHookLatched() {
+    return m_leftMotor.getStatorCurrent() >= ClimbConstants.kClimbLatchCurrentAmps
+        && m_rightMotor.getStatorCurrent() >= ClimbConstants.kClimbLatchCurrentAmps;
+  }
+
   /**
    * Sets left motor output for manual control and testing. Positive values extend arm, negative
    * values retract arm.
@@ -268,6 +293,39 @@ public class ClimbSubsystem extends SubsystemBase {
     SmartDashboard.putNumber("Out_R", rightOutput);
   }
 
+  /**
+   * Moves both hooks to the same height together. Each arm uses the same output law as
+   * {@link #setDesiredLeftHookHeight(double)}, which isn't profiled, and a cross-coupling term on
+   * the height difference slows down the arm that's ahead and speeds up the one that's behind, so
+   * they get there at the same time.
+   *
+   * @param height desired hook height (meters)
+   */
+  public void setDesiredHookHeights(double height) {
+    double leftHeight = getLeftHookHeight();
+    double rightHeight = getRightHookHeight();
+
+    // Capped so a big split can't swamp the height loop, the gain is bigger than kP.
+    double coupling = MathUtil.clamp(
+        ClimbConstants.kClimbCrossCouplingGain * (leftHeight - rightHeight),
+        -ClimbConstants.kClimbMaxCrossCouplingOutput,
+        ClimbConstants.kClimbMaxCrossCouplingOutput);
+    double leftOutput = getMotorOutput(height - leftHeight, m_climbLeftProfiledPIDController,
+        m_leftFeedForward) - coupling;
+    double rightOutput = getMotorOutput(height - rightHeight, m_climbRightProfiledPIDController,
+        m_rightFeedForward) + coupling;
+    m_leftMotor.set(ControlMode.PercentOutput, leftOutput);
+    m_rightMotor.set(ControlMode.PercentOutput, rightOutput);
+  }
+
+  /**
+   * Sets both hooks to full extension together. See {@link #setLeftHookToFullExtension()}.
+   */
+  public void setHooksToFullExtension() {
+    setDesiredHookHeights(
+        ClimbConstants.kClimbMaxHeight + ClimbConstants.kClimbMaxPosConfirmationExtraHeight);
+  }
+
   public void setPos(double height) {
     setDesiredLeftHookHeight(height);
     setDesiredRightHookHeight(height);
@@ -345,14 +403,21 @@ public class ClimbSubsystem extends SubsystemBase {
    * Instructs the solenoid to make climb vertical.
    */
   public void setClimbVertical() {
-    m_solenoid.set(Value.kForward);
+    setSolenoid(Value.kForward);
   }
 
   /**
    * Instructs the solenoid to make climb angled.
    */
   public void setClimbAngled() {
-    m_solenoid.set(Value.kReverse);
+    setSolenoid(Value.kReverse);
+  }
+
+  private void setSolenoid(Value value) {
+    if (m_solenoid.get() != value) {
+      m_lastSolenoidChangeTimestamp = Timer.getFPGATimestamp();
+    }
+    m_solenoid.set(value);
   }
 
   public void resetEncoders() {
@@ -362,11 +427,15 @@ public class ClimbSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
-    // Warn Drivers if the hooks are not near each other for some reason.
-//    if (Math.abs(getLeftHookHeight() - getRightHookHeight()) > 0.25) {
-//      DriverStation.reportWarning(
-//          "The climb hooks are not in sync. Manual control might be needed.", false);
-//    }
+    // Warn Drivers if the hooks are not near each other for some reason. Only once each time it
+    // happens, so it doesn't flood the driver station.
+    boolean outOfSync = Math.abs(getLeftHookHeight() - getRightHookHeight())
+        > ClimbConstants.kClimbMaxHookHeightDifference;
+    if (outOfSync && !m_hooksOutOfSync) {
+      DriverStation.reportWarning(
+          "The climb hooks are not in sync. Manual control might be needed.", false);
+    }
+    m_hooksOutOfSync = outOfSync;
     // Smart Dashboard Debugging
     // SmartDashboard.putBoolean("Left Climb Limit Switch: ", getIsLeftLimitSwitchPressed());
     // SmartDashboard.putBoolean("Right Climb Limit Switch: ", getIsRightLimitSwitchPressed());
@@ -0,0 +1,126 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
+
+/**
+ * Does what WPILib's ProfiledPIDController does with continuous input and a goal velocity of 0, but
+ * steps the trapezoid profile in place with plain doubles. ProfiledPIDController makes a new
+ * TrapezoidProfile and State objects on every calculate(), which is garbage every 20 ms per module.
+ *
+ * <p>The profile math is the same as TrapezoidProfile.calculate() one period ahead.
+ */
+class ContinuousProfiledPIDController {
+
+  private static final double kPeriodSeconds = 0.02;
+
+  private final PIDController m_controller;
+  private final double m_maxVelocity;
+  private final double m_maxAcceleration;
+  private final double m_minimumInput;
+  private final double m_maximumInput;
+
+  private double m_setpointPosition = 0;
+  private double m_setpointVelocity = 0;
+
+  /**
+   * Creates a new ContinuousProfiledPIDController.
+   *
+   * @param kp              proportional gain
+   * @param ki              integral gain
+   * @param kd              derivative gain
+   * @param maxVelocity     profile velocity limit
+   * @param maxAcceleration profile acceleration limit
+   * @param minimumInput    smallest input value, the same point as maximumInput
+   * @param maximumInput    largest input value
+   */
+  ContinuousProfiledPIDController(double kp, double ki, double kd, double maxVelocity,
+      double maxAcceleration, double minimumInput, double maximumInput) {
+    m_controller = new PIDController(kp, ki, kd, kPeriodSeconds);
+    m_controller.enableContinuousInput(minimumInput, maximumInput);
+    m_maxVelocity = maxVelocity;
+    m_maxAcceleration = maxAcceleration;
+    m_minimumInput = minimumInput;
+    m_maximumInput = maximumInput;
+  }
+
+  /**
+   * Restarts the profile from a measurement, at rest.
+   *
+   * @param measurement current position
+   */
+  void reset(double measurement) {
+    m_controller.reset();
+    m_setpointPosition = measurement;
+    m_setpointVelocity = 0;
+  }
+
+  /**
+   * Gets the velocity of the profile setpoint from the last calculate(), for the feedforward.
+   *
+   * @return setpoint velocity
+   */
+  double getSetpointVelocity() {
+    return m_setpointVelocity;
+  }
+
+  /**
+   * Moves the setpoint one period along the profile to the goal and returns the PID output.
+   *
+   * @param measurement current position
+   * @param goal        position to end up at, at rest
+   * @return PID output
+   */
+  double calculate(double measurement, double goal) {
+    // Take the short way around, from wherever the measurement is.
+    double errorBound = (m_maximumInput - m_minimumInput) / 2;
+    goal = MathUtil.inputModulus(goal - measurement, -errorBound, errorBound) + measurement;
+    double initialPosition =
+        MathUtil.inputModulus(m_setpointPosition - measurement, -errorBound, errorBound)
+            + measurement;
+
+    // Work in the direction of travel so the profile always goes positive.
+    double direction = initialPosition > goal ? -1 : 1;
+    initialPosition *= direction;
+    double initialVelocity = Math.min(m_setpointVelocity * direction, m_maxVelocity);
+    double goalPosition = goal * direction;
+
+    double cutoffBegin = initialVelocity / m_maxAcceleration;
+    double cutoffDistBegin = cutoffBegin * cutoffBegin * m_maxAcceleration / 2;
+    double fullTrapezoidDist = cutoffDistBegin + (goalPosition - initialPosition);
+    double accelerationTime = m_maxVelocity / m_maxAcceleration;
+    double fullSpeedDist =
+        fullTrapezoidDist - accelerationTime * accelerationTime * m_maxAcceleration;
+    if (fullSpeedDist < 0) {
+      accelerationTime = Math.sqrt(fullTrapezoidDist / m_maxAcceleration);
+      fullSpeedDist = 0;
+    }
+    double endAccel = accelerationTime - cutoffBegin;
+    double endFullSpeed = endAccel + fullSpeedDist / m_maxVelocity;
+    double endDecel = endFullSpeed + accelerationTime;
+
+    double t = kPeriodSeconds;
+    double position;
+    double velocity;
+    if (t < endAccel) {
+      velocity = initialVelocity + t * m_maxAcceleration;
+      position = initialPosition + (initialVelocity + t * m_maxAcceleration / 2) * t;
+    } else if (t < endFullSpeed) {
+      velocity = m_maxVelocity;
+      position = initialPosition
+          + ((initialVelocity + endAccel * m_maxAcceleration / 2) * endAccel
+              + m_maxVelocity * (t - endAccel));
+    } else if (t <= endDecel) {
+      double timeLeft = endDecel - t;
+      velocity = timeLeft * m_maxAcceleration;
+      position = goalPosition - timeLeft * m_maxAcceleration / 2 * timeLeft;
+    } else {
+      velocity = 0;
+      position = goalPosition;
+    }
+
+    m_setpointPosition = position * direction;
+    m_setpointVelocity = velocity * direction;
+    return m_controller.calculate(measurement, m_setpointPosition);
+  }
+}
@@ -5,25 +5,27 @@
 package frc.robot.subsystems;
 
 import com.kauailabs.navx.frc.AHRS;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.SPI;
-import edu.wpi.first.wpilibj.interfaces.Gyro;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.shuffleboard.BuiltInLayouts;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.FieldConstants;
+import frc.robot.Constants.ShooterConstants;
 
 
 public class DriveSubsystem extends SubsystemBase {
 
-    // The gyro sensor
-    private final Gyro m_gyro = new AHRS(SPI.Port.kMXP);
+    // The gyro sensor, updating fast enough to keep up with the odometry notifier
+    private final AHRS m_gyro = new AHRS(SPI.Port.kMXP, DriveConstants.kGyroUpdateRateHz);
 
     private int gyroOffset = 0;
 
@@ -51,11 +53,9 @@ public class DriveSubsystem extends SubsystemBase {
 //  private NetworkTableEntry gyroEntry =
 //      swerveTab.add("Gyro Heading", 0)
 //          .getEntry();
-    // Odometry class for tracking robot pose
-    SwerveDriveOdometry m_odometry =
-            new SwerveDriveOdometry(DriveConstants.kDriveKinematics, m_gyro.getRotation2d());
     private final ShuffleboardTab moduleTab = Shuffleboard.getTab("Module Info");
-    private final SwerveModule m_frontLeft =
+    // Package-private so tests can hand the modules a known sensor snapshot.
+    final SwerveModule m_frontLeft =
             new SwerveModule(
                     DriveConstants.kFrontLeftDriveMotorPort,
                     DriveConstants.kFrontLeftTurningMotorPort,
@@ -66,7 +66,7 @@ public class DriveSubsystem extends SubsystemBase {
                     moduleTab.getLayout("Front Left Module", BuiltInLayouts.kList)
                             .withSize(4, 8)
                             .withPosition(0, 0));
-    private final SwerveModule m_rearLeft =
+    final SwerveModule m_rearLeft =
             new SwerveModule(
                     DriveConstants.kRearLeftDriveMotorPort,
                     DriveConstants.kRearLeftTurningMotorPort,
@@ -77,7 +77,7 @@ public class DriveSubsystem extends SubsystemBase {
                     moduleTab.getLayout("Rear Left Module", BuiltInLayouts.kList)
                             .withSize(4, 8)
                             .withPosition(4, 0));
-    private final SwerveModule m_frontRight =
+    final SwerveModule m_frontRight =
             new SwerveModule(
                     DriveConstants.kFrontRightDriveMotorPort,
                     DriveConstants.kFrontRightTurningMotorPort,
@@ -88,7 +88,7 @@ public class DriveSubsystem extends SubsystemBase {
                     moduleTab.getLayout("Front Right Module", BuiltInLayouts.kList)
                             .withSize(4, 8)
                             .withPosition(8, 0));
-    private final SwerveModule m_rearRight =
+    final SwerveModule m_rearRight =
             new SwerveModule(
                     DriveConstants.kRearRightDriveMotorPort,
                     DriveConstants.kRearRightTurningMotorPort,
@@ -100,35 +100,298 @@ public class DriveSubsystem extends SubsystemBase {
                             .withSize(4, 8)
                             .withPosition(12, 0));
 
+    // Reused every loop by drive() and setModuleStates() so they don't allocate.
+    private final double[] m_desiredSpeeds = new double[4];
+    private final double[] m_desiredAngles = new double[4];
+    private boolean m_fieldRelative = true;
+
+    // Odometry runs on its own notifier so it integrates faster than the 20 ms robot loop. It's
+    // the same math as SwerveDriveOdometry.updateWithTime(), on doubles so the notifier doesn't
+    // allocate. Only the notifier and resetOdometry() touch the pose fields, and they share
+    // m_odometryLock.
+    private final Notifier m_odometryNotifier = new Notifier(this::updateOdometry);
+    private final Object m_odometryLock = new Object();
+    private final OdometrySampleBuffer m_odometrySamples =
+            new OdometrySampleBuffer(DriveConstants.kOdometrySampleBufferSize);
+    private double m_poseX = 0;
+    private double m_poseY = 0;
+    private double m_poseHeading = 0;
+    // Added to the gyro heading (counterclockwise, radians) to get the pose heading.
+    private double m_gyroOffset = Math.toRadians(m_gyro.getAngle());
+    private double m_lastOdometryTimestamp = -1;
+    // Field relative chassis velocity from the measured module states.
+    private volatile double m_fieldVelocityX = 0;
+    private volatile double m_fieldVelocityY = 0;
+    private final double[] m_measuredSpeeds = new double[4];
+    private final double[] m_measuredAngles = new double[4];
+    // Odometry notifier copy of each module's sensor snapshot.
+    private final SwerveModule.SensorSnapshot m_odometrySnapshot = new SwerveModule.SensorSnapshot();
+
+    // Pose handed out by getPose(), rebuilt from the sample buffer when there's a newer sample.
+    // Samples up to m_resetSequence were integrated before the last reset. Main loop only.
+    private Pose2d m_latestPose = new Pose2d();
+    private long m_latestPoseSequence = -1;
+    private long m_resetSequence = -1;
+    private final OdometrySampleBuffer.Sample m_poseSample = new OdometrySampleBuffer.Sample();
+
+    // Vision correction, a field relative offset added on top of the odometry pose. A constant
+    // offset carries over unchanged from the capture time to now, so a measurement can be
+    // compared against the pose history and applied directly. Main loop only.
+    private double m_visionOffsetX = 0;
+    private double m_visionOffsetY = 0;
+    private double m_lastVisionCaptureTimestamp = -1;
+    private double m_lastResetTimestamp = -1;
+    private final OdometrySampleBuffer.Sample m_visionSample = new OdometrySampleBuffer.Sample();
+
+    private final AimingController m_aimingController =
+            new AimingController(m_odometrySamples, m_gyro::getAngle);
+
     /**
      * Creates a new DriveSubsystem.
      */
     public DriveSubsystem() {
+        m_frontLeft.setDriveVelocityMode(
+                driveVelocityMode(DriveConstants.kFrontLeftOnboardDriveLoop));
+        m_rearLeft.setDriveVelocityMode(
+                driveVelocityMode(DriveConstants.kRearLeftOnboardDriveLoop));
+        m_frontRight.setDriveVelocityMode(
+                driveVelocityMode(DriveConstants.kFrontRightOnboardDriveLoop));
+        m_rearRight.setDriveVelocityMode(
+                driveVelocityMode(DriveConstants.kRearRightOnboardDriveLoop));
+        setSteeringMode(DriveConstants.kOnboardSteering
+                ? SwerveModule.SteeringMode.kTalonMotionMagic
+                : SwerveModule.SteeringMode.kRoboRIO);
+
+        m_odometryNotifier.startPeriodic(1.0 / DriveConstants.kOdometryFrequencyHz);
     }
 
+    /**
+     * Returns how fast the robot is moving.
+     *
+     * @return speed in meters per second
+     */
     public double speed() {
-        return 0;
+        return Math.hypot(m_fieldVelocityX, m_fieldVelocityY);
+    }
+
+    /**
+     * Returns the field relative x velocity from the last odometry update.
+     *
+     * @return velocity in meters per second
+     */
+    public double getFieldVelocityX() {
+        return m_fieldVelocityX;
+    }
+
+    /**
+     * Returns the field relative y velocity from the last odometry update.
+     *
+     * @return velocity in meters per second
+     */
+    public double getFieldVelocityY() {
+        return m_fieldVelocityY;
+    }
+
+    private static SwerveModule.DriveVelocityMode driveVelocityMode(boolean onboard) {
+        return onboard
+                ? SwerveModule.DriveVelocityMode.kTalonFX
+                : SwerveModule.DriveVelocityMode.kRoboRIO;
+    }
+
+    /**
+     * Sets where the drive velocity loop runs on every module.
+     *
+     * @param mode RIO or Talon FX velocity loop
+     */
+    public void setDriveVelocityMode(SwerveModule.DriveVelocityMode mode) {
+        m_frontLeft.setDriveVelocityMode(mode);
+        m_rearLeft.setDriveVelocityMode(mode);
+        m_frontRight.setDriveVelocityMode(mode);
+        m_rearRight.setDriveVelocityMode(mode);
+    }
+
+    /**
+     * Sets where the steering loop runs on every module.
+     *
+     * @param mode RIO or Talon FX Motion Magic steering
+     */
+    public void setSteeringMode(SwerveModule.SteeringMode mode) {
+        m_frontLeft.setSteeringMode(mode);
+        m_rearLeft.setSteeringMode(mode);
+        m_frontRight.setSteeringMode(mode);
+        m_rearRight.setSteeringMode(mode);
+    }
+
+    /**
+     * Reads the module sensors and the gyro, integrates them into the odometry, and stores the
+     * result in the sample buffer. Runs on the odometry notifier, not the main robot loop.
+     */
+    void updateOdometry() {
+        double timestamp = Timer.getFPGATimestamp();
+        double gyroAngle = m_gyro.getAngle();
+
+        m_frontLeft.refreshSensors();
+        m_frontRight.refreshSensors();
+        m_rearLeft.refreshSensors();
+        m_rearRight.refreshSensors();
+
+        // Kinematics order, same as drive(): front left, front right, rear left, rear right.
+        readMeasuredState(0, m_frontLeft);
+        readMeasuredState(1, m_frontRight);
+        readMeasuredState(2, m_rearLeft);
+        readMeasuredState(3, m_rearRight);
+
+        // Forward kinematics for the translation. The modules are symmetric about the center, so
+        // the rotation cancels out of the average and this is what the kinematics least squares
+        // solution comes to. The heading comes from the gyro anyway.
+        double robotVelocityX = 0;
+        double robotVelocityY = 0;
+        for (int i = 0; i < 4; i++) {
+            robotVelocityX += m_measuredSpeeds[i] * Math.cos(m_measuredAngles[i]) / 4;
+            robotVelocityY += m_measuredSpeeds[i] * Math.sin(m_measuredAngles[i]) / 4;
+        }
+
+        double x;
+        double y;
+        double heading;
+        synchronized (m_odometryLock) {
+            double period = m_lastOdometryTimestamp >= 0 ? timestamp - m_lastOdometryTimestamp : 0;
+            m_lastOdometryTimestamp = timestamp;
+            heading = MathUtil.angleModulus(-Math.toRadians(gyroAngle) + m_gyroOffset);
+
+            // Pose2d.exp() of the twist over this period, from the last heading.
+            double dx = robotVelocityX * period;
+            double dy = robotVelocityY * period;
+            double dtheta = MathUtil.angleModulus(heading - m_poseHeading);
+            double s;
+            double c;
+            if (Math.abs(dtheta) < 1E-9) {
+                s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+                c = 0.5 * dtheta;
+            } else {
+                s = Math.sin(dtheta) / dtheta;
+                c = (1 - Math.cos(dtheta)) / dtheta;
+            }
+            double forward = dx * s - dy * c;
+            double left = dx * c + dy * s;
+            double cos = Math.cos(m_poseHeading);
+            double sin = Math.sin(m_poseHeading);
+            m_poseX += forward * cos - left * sin;
+            m_poseY += forward * sin + left * cos;
+            m_poseHeading = heading;
+            x = m_poseX;
+            y = m_poseY;
+
+            // Added under the lock so a reset can tell which samples came before it.
+            m_odometrySamples.add(timestamp, gyroAngle, m_measuredSpeeds, m_measuredAngles,
+                    x, y, heading);
+        }
+
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        m_fieldVelocityX = robotVelocityX * cos - robotVelocityY * sin;
+        m_fieldVelocityY = robotVelocityX * sin + robotVelocityY * cos;
+    }
+
+    private void readMeasuredState(int index, SwerveModule module) {
+        module.readSnapshot(m_odometrySnapshot);
+        m_measuredSpeeds[index] = m_odometrySnapshot.speedMetersPerSecond;
+        m_measuredAngles[index] = m_odometrySnapshot.angleRadians;
+    }
+
+    /**
+     * Gets the buffer of recent odometry samples, written by the odometry notifier.
+     *
+     * @return odometry sample buffer
+     */
+    public OdometrySampleBuffer getOdometrySamples() {
+        return m_odometrySamples;
+    }
+
+    /**
+     * Compares the newest Limelight frame against the odometry pose from when the frame was
+     * taken, and moves the vision offset part of the way towards it.
+     */
+    private void updateVisionCorrection() {
+        LimelightSubsystem limelight = LimelightSubsystem.getInstance();
+        double captureTimestamp = limelight.getFrameCaptureTimestamp();
+        if (!limelight.hasValidTarget()
+                || captureTimestamp == m_lastVisionCaptureTimestamp
+                || captureTimestamp < m_lastResetTimestamp) {
+            return;
+        }
+        m_lastVisionCaptureTimestamp = captureTimestamp;
+        if (!m_odometrySamples.sampleAt(captureTimestamp, m_visionSample)) {
+            return;
+        }
+
+        // Walk back from the hub center along the line to the target to find the camera, then
+        // from the camera to the robot center.
+        double hubDistance = limelight.calculateDistance() + FieldConstants.kHubRadiusMeters;
+        double heading = m_visionSample.poseRotationRadians;
+        double bearing = heading - Math.toRadians(limelight.getTargetOffsetX());
+        double visionX = FieldConstants.kHubXMeters - hubDistance * Math.cos(bearing)
+                - ShooterConstants.cameraForwardOffset * Math.cos(heading);
+        double visionY = FieldConstants.kHubYMeters - hubDistance * Math.sin(bearing)
+                - ShooterConstants.cameraForwardOffset * Math.sin(heading);
+
+        double errorX = visionX - (m_visionSample.poseXMeters + m_visionOffsetX);
+        double errorY = visionY - (m_visionSample.poseYMeters + m_visionOffsetY);
+        if (Math.hypot(errorX, errorY) > DriveConstants.kVisionMaxCorrectionMeters) {
+            return;
+        }
+        m_visionOffsetX += DriveConstants.kVisionCorrectionGain * errorX;
+        m_visionOffsetY += DriveConstants.kVisionCorrectionGain * errorY;
+    }
+
+    /**
+     * Gets the aiming controller shared by the shooting commands.
+     *
+     * @return aiming controller
+     */
+    public AimingController getAimingController() {
+        return m_aimingController;
     }
 
     @Override
     public void periodic() {
-        // Update the odometry in the periodic block
-        m_odometry.update(
-                m_gyro.getRotation2d(),
-                m_frontLeft.getState(),
-                m_rearLeft.getState(),
-                m_frontRight.getState(),
-                m_rearRight.getState());
+        SmartDashboard.putBoolean("Field Relative:", m_fieldRelative);
+        if (ShooterConstants.kCameraForwardOffsetMeasured) {
+            updateVisionCorrection();
+        }
+
+        LimelightSubsystem limelight = LimelightSubsystem.getInstance();
+        if (limelight.hasValidTarget()) {
+            m_aimingController.addVisionFix(
+                    limelight.getTargetOffsetX(), limelight.getFrameCaptureTimestamp());
+        }
+        if (limelight.hasValidTarget() && ShooterConstants.kCameraForwardOffsetMeasured
+                && ShooterConstants.kTimeOfFlightMeasured) {
+            // Velocity component along the line from the robot center to the hub, for the shot
+            // map. The Limelight sees the hub from the camera, so add the camera offset back on.
+            double heading = getPose().getRotation().getRadians();
+            double cameraBearing = heading - Math.toRadians(limelight.getTargetOffsetX());
+            double hubDistance = limelight.calculateDistance() + FieldConstants.kHubRadiusMeters;
+            double hubX = ShooterConstants.cameraForwardOffset * Math.cos(heading)
+                    + hubDistance * Math.cos(cameraBearing);
+            double hubY = ShooterConstants.cameraForwardOffset * Math.sin(heading)
+                    + hubDistance * Math.sin(cameraBearing);
+            double hubBearing = Math.atan2(hubY, hubX);
+            limelight.setRadialVelocity(m_fieldVelocityX * Math.cos(hubBearing)
+                    + m_fieldVelocityY * Math.sin(hubBearing));
+        } else {
+            limelight.setRadialVelocity(0);
+        }
 
 //    SmartDashboard.putString("m_frontLeft", m_frontLeft.getState().toString());
 //    SmartDashboard.putString("m_rearLeft", m_rearLeft.getState().toString());
 //    SmartDashboard.putString("m_frontRight", m_frontRight.getState().toString());
 //    SmartDashboard.putString("m_rearRight", m_rearRight.getState().toString());
         // SmartDashboard.putString("odometry", m_odometry.getPoseMeters().toString());
-        // m_frontLeft.periodic_func();
-        // m_rearRight.periodic_func();
-        // m_rearLeft.periodic_func();
-        // m_frontRight.periodic_func();
+        m_frontLeft.periodic_func();
+        m_rearRight.periodic_func();
+        m_rearLeft.periodic_func();
+        m_frontRight.periodic_func();
     }
 
     public double heading() {
@@ -145,16 +408,63 @@ public class DriveSubsystem extends SubsystemBase {
      * @return The pose.
      */
     public Pose2d getPose() {
-        return m_odometry.getPoseMeters();
+        long sequence = m_odometrySamples.getLatestSequence();
+        if (sequence > m_latestPoseSequence && sequence > m_resetSequence
+                && m_odometrySamples.read(sequence, m_poseSample)) {
+            m_latestPose = new Pose2d(m_poseSample.poseXMeters, m_poseSample.poseYMeters,
+                    new Rotation2d(m_poseSample.poseRotationRadians));
+            m_latestPoseSequence = sequence;
+        }
+        return m_latestPose;
     }
 
     /**
-     * Resets the odometry to the specified pose.
+     * Returns the odometry pose with the vision correction applied.
+     *
+     * @return The pose.
+     */
+    public Pose2d getEstimatedPose() {
+        Pose2d pose = getPose();
+        return new Pose2d(pose.getX() + m_visionOffsetX, pose.getY() + m_visionOffsetY,
+                pose.getRotation());
+    }
+
+    /**
+     * Returns the x part of the vision correction, for callers that read {@link #getPose()} and
+     * don't want a new Pose2d every loop.
+     *
+     * @return correction in meters
+     */
+    public double getVisionOffsetX() {
+        return m_visionOffsetX;
+    }
+
+    /**
+     * Returns the y part of the vision correction.
+     *
+     * @return correction in meters
+     */
+    public double getVisionOffsetY() {
+        return m_visionOffsetY;
+    }
+
+    /**
+     * Resets the odometry to the specified pose. Also drops the vision correction.
      *
      * @param pose The pose to which to set the odometry.
      */
     public void resetOdometry(Pose2d pose) {
-        m_odometry.resetPosition(pose, m_gyro.getRotation2d());
+        synchronized (m_odometryLock) {
+            m_poseX = pose.getX();
+            m_poseY = pose.getY();
+            m_poseHeading = pose.getRotation().getRadians();
+            m_gyroOffset = m_poseHeading + Math.toRadians(m_gyro.getAngle());
+            m_resetSequence = m_odometrySamples.getLatestSequence();
+        }
+        m_latestPose = pose;
+        m_visionOffsetX = 0;
+        m_visionOffsetY = 0;
+        m_lastResetTimestamp = Timer.getFPGATimestamp();
     }
 
     /**
@@ -167,21 +477,31 @@ public class DriveSubsystem extends SubsystemBase {
      */
     @SuppressWarnings("ParameterName")
     public void drive(double xSpeed, double ySpeed, double rot, boolean fieldRelative) {
-        SmartDashboard.putBoolean("Field Relative:", fieldRelative);
-        SwerveModuleState[] swerveModuleStates =
-                DriveConstants.kDriveKinematics.toSwerveModuleStates(
-                        fieldRelative
-                                ? ChassisSpeeds.fromFieldRelativeSpeeds(xSpeed, ySpeed, rot, m_gyro.getRotation2d())
-                                : new ChassisSpeeds(xSpeed, ySpeed, rot));
-        SwerveDriveKinematics.desaturateWheelSpeeds(
-                swerveModuleStates, DriveConstants.kMaxSpeedMetersPerSecond);
-        m_frontLeft.setDesiredState(swerveModuleStates[0]);
-        m_frontRight.setDesiredState(swerveModuleStates[1]);
-        m_rearLeft.setDesiredState(swerveModuleStates[2]);
-        m_rearRight.setDesiredState(swerveModuleStates[3]);
-//        SmartDashboard.putString("Front Left desired state: ", swerveModuleStates[0].toString());
-//        SmartDashboard.putString("Front Right desired state: ", swerveModuleStates[1].toString());
+        m_fieldRelative = fieldRelative;
+        if (fieldRelative) {
+            // Same rotation as ChassisSpeeds.fromFieldRelativeSpeeds, without the Rotation2d.
+            double gyroRadians = Math.toRadians(-m_gyro.getAngle());
+            double cos = Math.cos(gyroRadians);
+            double sin = Math.sin(gyroRadians);
+            double robotXSpeed = xSpeed * cos + ySpeed * sin;
+            double robotYSpeed = -xSpeed * sin + ySpeed * cos;
+            xSpeed = robotXSpeed;
+            ySpeed = robotYSpeed;
+        }
+
+        // Closed form inverse kinematics, each module sees the chassis velocity plus rot x r.
+        for (int i = 0; i < 4; i++) {
+            double moduleXSpeed = xSpeed - rot * DriveConstants.kModuleYMeters[i];
+            double moduleYSpeed = ySpeed + rot * DriveConstants.kModuleXMeters[i];
+            m_desiredSpeeds[i] = Math.hypot(moduleXSpeed, moduleYSpeed);
+            m_desiredAngles[i] = Math.atan2(moduleYSpeed, moduleXSpeed);
+        }
+        desaturateWheelSpeeds(m_desiredSpeeds, DriveConstants.kMaxSpeedMetersPerSecond);
 
+        m_frontLeft.setDesiredState(m_desiredSpeeds[0], m_desiredAngles[0]);
+        m_frontRight.setDesiredState(m_desiredSpeeds[1], m_desiredAngles[1]);
+        m_rearLeft.setDesiredState(m_desiredSpeeds[2], m_desiredAngles[2]);
+        m_rearRight.setDesiredState(m_desiredSpeeds[3], m_desiredAngles[3]);
     }
 
     /**
@@ -190,12 +510,37 @@ public class DriveSubsystem extends SubsystemBase {
      * @param desiredStates The desired SwerveModule states.
      */
     public void setModuleStates(SwerveModuleState[] desiredStates) {
-        SwerveDriveKinematics.desaturateWheelSpeeds(
-                desiredStates, DriveConstants.kMaxSpeedMetersPerSecond);
-        m_frontLeft.setDesiredState(desiredStates[0]);
-        m_frontRight.setDesiredState(desiredStates[1]);
-        m_rearLeft.setDesiredState(desiredStates[2]);
-        m_rearRight.setDesiredState(desiredStates[3]);
+        for (int i = 0; i < 4; i++) {
+            m_desiredSpeeds[i] = desiredStates[i].speedMetersPerSecond;
+            m_desiredAngles[i] = desiredStates[i].angle.getRadians();
+        }
+        desaturateWheelSpeeds(m_desiredSpeeds, DriveConstants.kMaxSpeedMetersPerSecond);
+
+        m_frontLeft.setDesiredState(m_desiredSpeeds[0], m_desiredAngles[0]);
+        m_frontRight.setDesiredState(m_desiredSpeeds[1], m_desiredAngles[1]);
+        m_rearLeft.setDesiredState(m_desiredSpeeds[2], m_desiredAngles[2]);
+        m_rearRight.setDesiredState(m_desiredSpeeds[3], m_desiredAngles[3]);
+    }
+
+    /**
+     * Scales the wheel speeds down in place so none of them go over the max speed, keeping the
+     * ratio between the modules. SwerveDriveKinematics.desaturateWheelSpeeds does the same thing,
+     * but builds a list to find the max.
+     *
+     * @param speeds                  wheel speeds in meters per second
+     * @param maxSpeedMetersPerSecond max speed a module can reach
+     */
+    private static void desaturateWheelSpeeds(double[] speeds, double maxSpeedMetersPerSecond) {
+        double maxSpeed = 0;
+        for (double speed : speeds) {
+            maxSpeed = Math.max(maxSpeed, Math.abs(speed));
+        }
+        if (maxSpeed > maxSpeedMetersPerSecond) {
+            double scale = maxSpeedMetersPerSecond / maxSpeed;
+            for (int i = 0; i < speeds.length; i++) {
+                speeds[i] *= scale;
+            }
+        }
     }
 
     /**
@@ -214,14 +559,47 @@ public class DriveSubsystem extends SubsystemBase {
 //    return m_gyro.getRotation2d().getDegrees();
 //  }
 
-//  /**
-//   * Returns the turn rate of the robot.
-//   *
-//   * @return The turn rate of the robot, in degrees per second
-//   */
-//  public double getTurnRate() {
-////    return m_gyro.getRate() * (DriveConstants.kGyroReversed ? -1.0 : 1.0);
-//    return m_gyro.getRate();
-//  }
+    /**
+     * Returns the pitch of the robot, used to watch it swing while climbing.
+     *
+     * @return pitch in degrees
+     */
+    public double getPitchDegrees() {
+        return m_gyro.getPitch();
+    }
+
+    /**
+     * Returns the turn rate of the robot.
+     *
+     * @return The turn rate of the robot, in degrees per second, clockwise positive
+     */
+    public double getTurnRate() {
+        return m_gyro.getRate();
+    }
+
+    /**
+     * Predicts how long until a Limelight heading error will be inside a tolerance, from how fast
+     * the robot is turning right now.
+     *
+     * @param headingErrorDegrees target offset, positive when the target is to the right
+     * @param toleranceDegrees    error that counts as lined up
+     * @return seconds until lined up, 0 if already lined up, or infinity if the robot isn't turning
+     *     towards the target or the error isn't known (NaN)
+     */
+    public double getTimeToHeadingSeconds(double headingErrorDegrees, double toleranceDegrees) {
+        if (Double.isNaN(headingErrorDegrees)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double angleToGo = Math.abs(headingErrorDegrees) - toleranceDegrees;
+        if (angleToGo < 0) {
+            return 0;
+        }
+        // Turning clockwise brings a target on the right towards the crosshair.
+        double closingRate = Math.signum(headingErrorDegrees) * getTurnRate();
+        if (closingRate <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return angleToGo / closingRate;
+    }
 
 }
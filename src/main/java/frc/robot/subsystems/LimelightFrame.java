@@ -0,0 +1,38 @@
+package frc.robot.subsystems;
+
+/**
+ * Everything the Limelight published for one camera frame. Built by LimelightSubsystem when any of its
+ * entries change and never changed after that, so one frame can be handed to the main loop
+ * without the values getting mixed with the next frame's.
+ */
+public final class LimelightFrame {
+
+  /** Frame used before anything has come in from the camera. */
+  public static final LimelightFrame EMPTY = new LimelightFrame(0, 0, 0, false, 0, 0, -1);
+
+  /** Count of frames built, starting at 1. */
+  public final long sequence;
+  /** Horizontal offset from crosshair to target, -29.8 to 29.8 degrees. */
+  public final double tx;
+  /** Vertical offset from crosshair to target, -24.85 to 24.85 degrees. */
+  public final double ty;
+  /** Whether the camera saw a valid target. */
+  public final boolean hasTarget;
+  /** Target area, 0% to 100% of the image. */
+  public final double ta;
+  /** Pipeline latency (tl) in milliseconds, not counting image capture. */
+  public final double latencyMs;
+  /** FPGA time the newest of the frame's values was received, in seconds. */
+  public final double receiveTimestampSeconds;
+
+  LimelightFrame(long sequence, double tx, double ty, boolean hasTarget, double ta,
+      double latencyMs, double receiveTimestampSeconds) {
+    this.sequence = sequence;
+    this.tx = tx;
+    this.ty = ty;
+    this.hasTarget = hasTarget;
+    this.ta = ta;
+    this.latencyMs = latencyMs;
+    this.receiveTimestampSeconds = receiveTimestampSeconds;
+  }
+}
@@ -1,12 +1,16 @@
 package frc.robot.subsystems;
 
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.EntryNotification;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
-import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.networktables.NetworkTablesJNI;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import java.util.concurrent.atomic.AtomicReference;
 import frc.robot.Constants.ShooterConstants;
 
 /**
@@ -26,9 +30,35 @@ public class LimelightSubsystem extends SubsystemBase {
   private static NetworkTableEntry ty;
   private static NetworkTableEntry tv;
   private static NetworkTableEntry ta;
+  private static NetworkTableEntry tl;
   private static NetworkTableEntry camMode;
   private static NetworkTableEntry ledMode;
 
+  // Newest frame from the listener thread, and the one the main loop latched this cycle.
+  private final AtomicReference<LimelightFrame> m_latestFrame =
+      new AtomicReference<>(LimelightFrame.EMPTY);
+  private LimelightFrame m_frame = LimelightFrame.EMPTY;
+  private double m_frameCaptureTimestamp = -1;
+
+  // The loader reads the shot map file on its own thread, the map gets latched in periodic().
+  private final ShotMapLoader m_shotMapLoader = new ShotMapLoader(
+      ShooterConstants.kShotMapFileName,
+      new ShotMap(ShooterConstants.topMotorValues, ShooterConstants.bottomMotorValues));
+  private ShotMap m_shotMap = m_shotMapLoader.get();
+  // Distance and wheel speeds for the latched frame.
+  private final ShotMap.Shot m_shot = new ShotMap.Shot();
+  private double m_distance = 0;
+  // Robot velocity towards the target, set by DriveSubsystem.
+  private double m_radialVelocity = 0;
+
+  // Guarded by this, the listener thread and periodic() both build frames.
+  private long m_nextSequence = 1;
+  private long m_lastFrameChange = -1;
+  // Notifications for a tl update that was already turned into a frame.
+  private volatile long m_duplicateFrames = 0;
+  // Frames replaced by a newer one before periodic() latched them. Main loop only.
+  private long m_droppedFrames = 0;
+
   /**
    * Get limelight data from network table.
    */
@@ -40,8 +70,58 @@ public class LimelightSubsystem extends SubsystemBase {
         "ty"); // Vertical offset from crosshair to target (-24.85 to 24.85 degrees).
     tv = table.getEntry("tv"); // Whether the limelight has any valid targets (0 or 1).
     ta = table.getEntry("ta"); // Target area (0% of image to 100% of image).
+    tl = table.getEntry("tl"); // Pipeline latency in milliseconds, published with every frame.
     ledMode = table.getEntry("ledMode"); // limelight's LED state (0-3).
     camMode = table.getEntry("camMode"); // limelight's operation mode (0-1).
+
+    // tl is the fast frame trigger. The pipeline latency is only known once the frame's results
+    // are done, so the Limelight writes it after tx/ty/tv/ta, and NetworkTables applies a
+    // connection's updates in order. By the time tl's update shows up, the rest of its frame is in
+    // the table. NetworkTables doesn't resend a value that didn't change though, and tl often
+    // repeats, so periodic() also checks every entry's change time and picks up frames that came
+    // in without a new tl.
+    tl.addListener(this::onLatencyUpdate,
+        EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);
+  }
+
+  /**
+   * Publishes a frame when a new tl comes in. Runs on the NetworkTables listener thread.
+   */
+  private void onLatencyUpdate(EntryNotification notification) {
+    // The same update can be notified twice, e.g. as both new and updated on reconnect.
+    if (!publishFrameIfChanged()) {
+      m_duplicateFrames++;
+    }
+  }
+
+  /**
+   * Builds a frame from the entry values if any of them changed since the last frame, and
+   * publishes it.
+   *
+   * @return true if a new frame was published
+   */
+  private synchronized boolean publishFrameIfChanged() {
+    long change = Math.max(tl.getLastChange(),
+        Math.max(Math.max(tx.getLastChange(), ty.getLastChange()),
+            Math.max(tv.getLastChange(), ta.getLastChange())));
+    if (change <= m_lastFrameChange) {
+      return false;
+    }
+    m_lastFrameChange = change;
+
+    // Change times are in NetworkTables microseconds. Work out when the newest value came in, so
+    // a frame picked up late by periodic() still gets the right capture time.
+    double receiveTimestamp = Timer.getFPGATimestamp()
+        - (NetworkTablesJNI.now() - change) / 1e6;
+    m_latestFrame.set(new LimelightFrame(
+        m_nextSequence++,
+        tx.getDouble(0.0),
+        ty.getDouble(0.0),
+        tv.getDouble(0.0) == 1,
+        ta.getDouble(0.0),
+        tl.getDouble(0.0),
+        receiveTimestamp));
+    return true;
   }
 
   /**
@@ -63,11 +143,11 @@ public class LimelightSubsystem extends SubsystemBase {
    * @return offset from -29.8 to 29.8 degrees.
    */
   public double getTargetOffsetX() {
-    return tx.getDouble(0.0);
+    return m_frame.tx;
   }
 
   public boolean hasValidTarget() {
-    return (tv.getDouble(0.0) == 1);
+    return m_frame.hasTarget;
   }
 
   /**
@@ -76,7 +156,7 @@ public class LimelightSubsystem extends SubsystemBase {
    * @return offset from -24.85 to 24.85 degrees.
    */
   public double getTargetOffsetY() {
-    return ty.getDouble(0.0);
+    return m_frame.ty;
   }
 
   /**
@@ -85,7 +165,7 @@ public class LimelightSubsystem extends SubsystemBase {
    * @return true if target is found and false if target is not found.
    */
   public boolean isTargetAvailable() {
-    return tv.getNumber(0).intValue() == 1;
+    return m_frame.hasTarget;
   }
 
   /**
@@ -94,7 +174,53 @@ public class LimelightSubsystem extends SubsystemBase {
    * @return target area from 0% to 100%.
    */
   public double getTargetArea() {
-    return ta.getDouble(0.0);
+    return m_frame.ta;
+  }
+
+  /**
+   * Latency from the camera taking the picture to the results being published, including image
+   * capture.
+   *
+   * @return latency in seconds.
+   */
+  public double getLatencySeconds() {
+    return (m_frame.latencyMs + ShooterConstants.imageCaptureLatencyMs) / 1000;
+  }
+
+  /**
+   * The frame latched at the start of this cycle. Every getter reads from it, so they all agree.
+   *
+   * @return the current frame.
+   */
+  public LimelightFrame getFrame() {
+    return m_frame;
+  }
+
+  /**
+   * Frames that were replaced by a newer one before the main loop picked them up.
+   *
+   * @return dropped frame count.
+   */
+  public long getDroppedFrameCount() {
+    return m_droppedFrames;
+  }
+
+  /**
+   * tl notifications for an update that was already turned into a frame.
+   *
+   * @return duplicate frame count.
+   */
+  public long getDuplicateFrameCount() {
+    return m_duplicateFrames;
+  }
+
+  /**
+   * FPGA time the newest frame was taken, worked out from when it showed up minus the latency.
+   *
+   * @return capture time in seconds, or -1 before the first frame.
+   */
+  public double getFrameCaptureTimestamp() {
+    return m_frameCaptureTimestamp;
   }
 
   /**
@@ -177,55 +303,57 @@ public class LimelightSubsystem extends SubsystemBase {
   }
 
   /**
-   * Calculates distance in meters
+   * Calculates distance in meters. Worked out once per frame in periodic().
    *
    * @return distance in meters
    */
   public double calculateDistance() {
-    return ((ShooterConstants.targetHeight - ShooterConstants.cameraHeight) / Math.tan((
-        ShooterConstants.cameraAngle + getTargetOffsetY()) * (Math.PI / 180)));
-  }
-
-  public double calculateRPM(double[][] table) {
-    double distance = calculateDistance();
-
-    // Handles if the distance recorded is more than the max distance
-    if (table[table.length - 1][0] < distance) return table[table.length - 1][1];
-
-    double lowerDistance = 0;
-    double lowerSpeed = 0;
-    double higherDistance = 0.1; // Shouldn't be necessary but just in case
-    double higherSpeed = 0;
-
-    // Gets the closest values below and above the desired value
-    for (int i = 0; i < table.length; i++) {
-      try {
-        if (table[i][0] <= distance && table[i + 1][0] > distance) {
-          lowerDistance = table[i][0];
-          lowerSpeed = table[i][1];
-          higherDistance = table[i + 1][0];
-          higherSpeed = table[i + 1][1];
-          break;
-        }
-      }
-      catch(Exception e){
-//        Shouldn't be called, but...
-//        Error handling is a thing
-        assert table[0] != null;
-        lowerDistance = table[0][0];
-        lowerSpeed = table[0][1];
-        assert table[1] != null;
-        higherDistance = table[1][0];
-        higherSpeed = table[0][1];
-        DriverStation.reportWarning("Error in LimelightSubsystem.calculateRPM(), error: " + e, true);
-      }
-    }
+    return m_distance;
+  }
 
-    // Gets slope or line connecting points
-    double linearSlope = (higherSpeed - lowerSpeed) / (higherDistance - lowerDistance);
+  /**
+   * Sets how fast the robot is moving towards the target, so the wheel speeds can make up for it.
+   *
+   * @param radialVelocityMetersPerSecond velocity towards the target
+   */
+  public void setRadialVelocity(double radialVelocityMetersPerSecond) {
+    m_radialVelocity = radialVelocityMetersPerSecond;
+  }
 
-    // Uses point slope form to get the xValue
-    return (linearSlope * (distance - lowerDistance) + lowerSpeed);
+  public double getRadialVelocity() {
+    return m_radialVelocity;
+  }
+
+  /**
+   * Top wheel speed for the current distance, from the shot map.
+   *
+   * @return top shooter RPM
+   */
+  public double getTopShooterRPM() {
+    return m_shot.topRPM;
+  }
+
+  /**
+   * Bottom wheel speed for the current distance, from the shot map.
+   *
+   * @return bottom shooter RPM
+   */
+  public double getBottomShooterRPM() {
+    return m_shot.bottomRPM;
+  }
+
+  /**
+   * The distance to wheel speed lookup latched at the start of this cycle.
+   *
+   * @return the shot map
+   */
+  public ShotMap getShotMap() {
+    return m_shotMap;
+  }
+
+  private static double distanceFromFrame(LimelightFrame frame) {
+    return ((ShooterConstants.targetHeight - ShooterConstants.cameraHeight) / Math.tan((
+        ShooterConstants.cameraAngle + frame.ty) * (Math.PI / 180)));
   }
 
   /**
@@ -261,6 +389,22 @@ public class LimelightSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
+    // Frames where only tx/ty/tv/ta changed don't trigger the tl listener.
+    publishFrameIfChanged();
+
+    // Latch one frame and one shot map for the whole cycle.
+    LimelightFrame frame = m_latestFrame.get();
+    if (frame != m_frame) {
+      if (m_frame.sequence > 0) {
+        m_droppedFrames += Math.max(0, frame.sequence - m_frame.sequence - 1);
+      }
+      m_frame = frame;
+      m_frameCaptureTimestamp = frame.receiveTimestampSeconds - getLatencySeconds();
+      m_distance = distanceFromFrame(frame);
+    }
+    m_shotMap = m_shotMapLoader.get();
+    // The radial velocity changes every cycle, so look up every cycle. It's just an index.
+    m_shotMap.lookup(m_distance, m_radialVelocity, m_shot);
 //    SmartDashboard.putNumber("Distance ", calculateDistance());
 //    SmartDashboard.putNumber("Distance (ft)", Units.metersToFeet(calculateDistance()));
 //    SmartDashboard.putNumber("Distance (ft) (robot relative)", Units.metersToFeet(calculateDistance()) - 2);
@@ -0,0 +1,103 @@
+package frc.robot.subsystems;
+
+import frc.robot.Constants.FieldConstants;
+import java.util.function.Supplier;
+
+/**
+ * Works out where to aim and how fast to spin the wheels when shooting while the robot is moving.
+ * The ball keeps the robot's velocity after it leaves, so instead of the hub we aim at a virtual
+ * target moved back along the robot's velocity by the ball's time of flight, and look up the wheel
+ * speeds for the distance to that virtual target.
+ *
+ * <p>Results are stored in the solver and overwritten by the next solve(), so nothing gets
+ * allocated per cycle.
+ */
+public class MovingShotSolver {
+
+  private final Supplier<ShotMap> m_shotMap;
+  private final ShotMap.Shot m_shot = new ShotMap.Shot();
+
+  private double m_virtualTargetXMeters;
+  private double m_virtualTargetYMeters;
+  private double m_leadAngleDegrees;
+  private double m_aimErrorDegrees;
+
+  /**
+   * Creates a new MovingShotSolver.
+   *
+   * @param shotMap distance to wheel speed lookup, keyed on Limelight distance
+   */
+  public MovingShotSolver(Supplier<ShotMap> shotMap) {
+    m_shotMap = shotMap;
+  }
+
+  /**
+   * Solves for the current cycle.
+   *
+   * @param limelightDistanceMeters distance from the Limelight, to the vision tape
+   * @param targetOffsetXDegrees    Limelight tx, positive when the target is to the right
+   * @param headingRadians          field relative robot heading, counterclockwise positive
+   * @param velocityXMetersPerSecond field relative robot velocity
+   * @param velocityYMetersPerSecond field relative robot velocity
+   */
+  public void solve(double limelightDistanceMeters, double targetOffsetXDegrees,
+      double headingRadians, double velocityXMetersPerSecond, double velocityYMetersPerSecond) {
+    // Field relative vector from the robot to the hub center.
+    double hubDistance = limelightDistanceMeters + FieldConstants.kHubRadiusMeters;
+    double hubBearing = headingRadians - Math.toRadians(targetOffsetXDegrees);
+    double hubX = hubDistance * Math.cos(hubBearing);
+    double hubY = hubDistance * Math.sin(hubBearing);
+
+    double virtualX = hubX;
+    double virtualY = hubY;
+    // Time of flight depends on the distance, which depends on the time of flight. A few rounds of
+    // substitution is plenty at robot speeds.
+    for (int i = 0; i < ShotMap.kTimeOfFlightIterations; i++) {
+      double timeOfFlight = ShotMap.timeOfFlightSeconds(
+          Math.hypot(virtualX, virtualY) - FieldConstants.kHubRadiusMeters);
+      virtualX = hubX - velocityXMetersPerSecond * timeOfFlight;
+      virtualY = hubY - velocityYMetersPerSecond * timeOfFlight;
+    }
+
+    m_virtualTargetXMeters = virtualX - hubX;
+    m_virtualTargetYMeters = virtualY - hubY;
+    m_leadAngleDegrees = Math.toDegrees(
+        Math.atan2(hubX * virtualY - hubY * virtualX, hubX * virtualX + hubY * virtualY));
+    m_aimErrorDegrees = targetOffsetXDegrees - m_leadAngleDegrees;
+
+    m_shotMap.get().lookup(Math.hypot(virtualX, virtualY) - FieldConstants.kHubRadiusMeters, m_shot);
+  }
+
+  /** Field relative offset from the hub to the virtual target, x. */
+  public double getVirtualTargetXMeters() {
+    return m_virtualTargetXMeters;
+  }
+
+  /** Field relative offset from the hub to the virtual target, y. */
+  public double getVirtualTargetYMeters() {
+    return m_virtualTargetYMeters;
+  }
+
+  /** Angle from the hub to the virtual target as seen from the robot, counterclockwise positive. */
+  public double getLeadAngleDegrees() {
+    return m_leadAngleDegrees;
+  }
+
+  /** Heading error to turn out, in the same sense as Limelight tx. */
+  public double getAimErrorDegrees() {
+    return m_aimErrorDegrees;
+  }
+
+  /** Limelight-equivalent distance to the virtual target. */
+  public double getDistanceMeters() {
+    return m_shot.distanceMeters;
+  }
+
+  public double getTopRPM() {
+    return m_shot.topRPM;
+  }
+
+  public double getBottomRPM() {
+    return m_shot.bottomRPM;
+  }
+}
@@ -0,0 +1,238 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.MathUtil;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size ring buffer of timestamped odometry samples. The odometry notifier is the only
+ * writer, and readers on the main loop never block it: every slot carries a sequence number that
+ * is cleared while the slot is being written, so a reader can tell when it raced the writer and
+ * just tries again (or gives up on that sample).
+ *
+ * <p>All the storage is allocated up front, so adding and reading samples doesn't create garbage.
+ */
+public class OdometrySampleBuffer {
+
+  /**
+   * Holder a reader copies a sample into. Reuse one of these instead of making a new one per read.
+   */
+  public static class Sample {
+
+    public double timestampSeconds;
+    public double gyroAngleDegrees;
+    public final double[] moduleSpeedsMetersPerSecond = new double[4];
+    public final double[] moduleAnglesRadians = new double[4];
+    public double poseXMeters;
+    public double poseYMeters;
+    public double poseRotationRadians;
+  }
+
+  private final int m_capacity;
+
+  private final double[] m_timestamps;
+  private final double[] m_gyroAngles;
+  private final double[] m_moduleSpeeds;
+  private final double[] m_moduleAngles;
+  private final double[] m_poseX;
+  private final double[] m_poseY;
+  private final double[] m_poseRotation;
+
+  // Sequence number stored in each slot, -1 while the writer is in the middle of filling it.
+  private final AtomicLongArray m_slotSequences;
+  // Sequence number of the newest complete sample, -1 when empty.
+  private final AtomicLong m_latestSequence = new AtomicLong(-1);
+  // Only touched by the writer.
+  private long m_nextSequence = 0;
+  // Only touched by sampleAt(), on the reader side.
+  private final Sample m_newerScratch = new Sample();
+
+  /**
+   * Creates a new OdometrySampleBuffer.
+   *
+   * @param capacity how many samples to keep before the oldest ones get overwritten
+   */
+  public OdometrySampleBuffer(int capacity) {
+    m_capacity = capacity;
+    m_timestamps = new double[capacity];
+    m_gyroAngles = new double[capacity];
+    m_moduleSpeeds = new double[capacity * 4];
+    m_moduleAngles = new double[capacity * 4];
+    m_poseX = new double[capacity];
+    m_poseY = new double[capacity];
+    m_poseRotation = new double[capacity];
+    m_slotSequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      m_slotSequences.set(i, -1);
+    }
+  }
+
+  /**
+   * Adds a sample. Must only be called from the one writer thread.
+   *
+   * @param timestampSeconds       FPGA time the sensors were read
+   * @param gyroAngleDegrees       raw gyro angle, clockwise positive
+   * @param moduleSpeeds           module speeds in kinematics order (FL, FR, RL, RR)
+   * @param moduleAngles           module angles in kinematics order, in radians
+   * @param poseXMeters            integrated pose x
+   * @param poseYMeters            integrated pose y
+   * @param poseRotationRadians    integrated pose rotation
+   */
+  public void add(double timestampSeconds, double gyroAngleDegrees, double[] moduleSpeeds,
+      double[] moduleAngles, double poseXMeters, double poseYMeters, double poseRotationRadians) {
+    long sequence = m_nextSequence++;
+    int slot = (int) (sequence % m_capacity);
+
+    m_slotSequences.set(slot, -1);
+    VarHandle.storeStoreFence();
+
+    m_timestamps[slot] = timestampSeconds;
+    m_gyroAngles[slot] = gyroAngleDegrees;
+    for (int i = 0; i < 4; i++) {
+      m_moduleSpeeds[slot * 4 + i] = moduleSpeeds[i];
+      m_moduleAngles[slot * 4 + i] = moduleAngles[i];
+    }
+    m_poseX[slot] = poseXMeters;
+    m_poseY[slot] = poseYMeters;
+    m_poseRotation[slot] = poseRotationRadians;
+
+    m_slotSequences.set(slot, sequence);
+    m_latestSequence.set(sequence);
+  }
+
+  /**
+   * Gets the sequence number of the newest sample.
+   *
+   * @return sequence number, or -1 if nothing has been added yet
+   */
+  public long getLatestSequence() {
+    return m_latestSequence.get();
+  }
+
+  /**
+   * Gets the sequence number of the oldest sample that should still be readable.
+   *
+   * @return sequence number, or -1 if nothing has been added yet
+   */
+  public long getOldestSequence() {
+    long latest = getLatestSequence();
+    if (latest < 0) {
+      return -1;
+    }
+    // Leave one slot of margin for the one the writer might be filling right now.
+    return Math.max(0, latest - m_capacity + 2);
+  }
+
+  /**
+   * Copies a sample out of the buffer.
+   *
+   * @param sequence which sample to read
+   * @param into     where to copy the sample
+   * @return false if the sample was already overwritten or was being written during the read
+   */
+  public boolean read(long sequence, Sample into) {
+    if (sequence < 0) {
+      return false;
+    }
+    int slot = (int) (sequence % m_capacity);
+    if (m_slotSequences.get(slot) != sequence) {
+      return false;
+    }
+
+    into.timestampSeconds = m_timestamps[slot];
+    into.gyroAngleDegrees = m_gyroAngles[slot];
+    for (int i = 0; i < 4; i++) {
+      into.moduleSpeedsMetersPerSecond[i] = m_moduleSpeeds[slot * 4 + i];
+      into.moduleAnglesRadians[i] = m_moduleAngles[slot * 4 + i];
+    }
+    into.poseXMeters = m_poseX[slot];
+    into.poseYMeters = m_poseY[slot];
+    into.poseRotationRadians = m_poseRotation[slot];
+
+    VarHandle.loadLoadFence();
+    return m_slotSequences.get(slot) == sequence;
+  }
+
+  /**
+   * Copies the newest sample out of the buffer.
+   *
+   * @param into where to copy the sample
+   * @return false if there are no samples yet
+   */
+  public boolean readLatest(Sample into) {
+    // The writer can only lap us if we get preempted for a whole buffer's worth of samples.
+    for (int attempt = 0; attempt < 3; attempt++) {
+      if (read(getLatestSequence(), into)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the sample at a point in time, interpolating between the two samples around it. Uses
+   * scratch storage, so only call this from one reader thread.
+   *
+   * @param timestampSeconds FPGA time to look up
+   * @param into             where to put the interpolated sample
+   * @return false if the time is older than the buffer or a sample got overwritten while searching
+   */
+  public boolean sampleAt(double timestampSeconds, Sample into) {
+    Sample newer = m_newerScratch;
+    if (!readLatest(newer)) {
+      return false;
+    }
+    if (timestampSeconds >= newer.timestampSeconds) {
+      copy(newer, into);
+      return true;
+    }
+
+    // The lookups are usually a few samples back, so just walk from the newest one.
+    long oldest = getOldestSequence();
+    for (long sequence = getLatestSequence() - 1; sequence >= oldest; sequence--) {
+      if (!read(sequence, into)) {
+        return false;
+      }
+      if (into.timestampSeconds <= timestampSeconds) {
+        interpolate(into, newer, timestampSeconds);
+        return true;
+      }
+      copy(into, newer);
+    }
+    return false;
+  }
+
+  private static void copy(Sample from, Sample to) {
+    to.timestampSeconds = from.timestampSeconds;
+    to.gyroAngleDegrees = from.gyroAngleDegrees;
+    for (int i = 0; i < 4; i++) {
+      to.moduleSpeedsMetersPerSecond[i] = from.moduleSpeedsMetersPerSecond[i];
+      to.moduleAnglesRadians[i] = from.moduleAnglesRadians[i];
+    }
+    to.poseXMeters = from.poseXMeters;
+    to.poseYMeters = from.poseYMeters;
+    to.poseRotationRadians = from.poseRotationRadians;
+  }
+
+  /**
+   * Interpolates older towards newer in place. Angles go the short way around.
+   */
+  private static void interpolate(Sample older, Sample newer, double timestampSeconds) {
+    double span = newer.timestampSeconds - older.timestampSeconds;
+    double t = span > 0 ? (timestampSeconds - older.timestampSeconds) / span : 0;
+
+    older.timestampSeconds = timestampSeconds;
+    older.gyroAngleDegrees += (newer.gyroAngleDegrees - older.gyroAngleDegrees) * t;
+    for (int i = 0; i < 4; i++) {
+      older.moduleSpeedsMetersPerSecond[i] +=
+          (newer.moduleSpeedsMetersPerSecond[i] - older.moduleSpeedsMetersPerSecond[i]) * t;
+      older.moduleAnglesRadians[i] = MathUtil.angleModulus(older.moduleAnglesRadians[i]
+          + MathUtil.angleModulus(newer.moduleAnglesRadians[i] - older.moduleAnglesRadians[i]) * t);
+    }
+    older.poseXMeters += (newer.poseXMeters - older.poseXMeters) * t;
+    older.poseYMeters += (newer.poseYMeters - older.poseYMeters) * t;
+    older.poseRotationRadians = MathUtil.angleModulus(older.poseRotationRadians
+        + MathUtil.angleModulus(newer.poseRotationRadians - older.poseRotationRadians) * t);
+  }
+}
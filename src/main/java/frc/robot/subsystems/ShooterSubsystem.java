@@ -5,20 +5,136 @@
 package frc.robot.subsystems;
 
 import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.DemandType;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
 import com.ctre.phoenix.motorcontrol.StatusFrame;
 import com.ctre.phoenix.motorcontrol.TalonFXControlMode;
 import com.ctre.phoenix.motorcontrol.TalonFXFeedbackDevice;
 import com.ctre.phoenix.motorcontrol.can.TalonFX;
 
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.controller.LinearQuadraticRegulator;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import edu.wpi.first.math.filter.LinearFilter;
+import edu.wpi.first.math.estimator.KalmanFilter;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.system.LinearSystem;
+import edu.wpi.first.math.system.LinearSystemLoop;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.system.plant.LinearSystemId;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.ShooterConstants;
+import java.util.function.IntSupplier;
 
 public class ShooterSubsystem extends SubsystemBase {
 
+  /** How the flywheel velocity is controlled. */
+  public enum ShooterControlMode {
+    /** Talon FX onboard velocity PIDF. */
+    kTalonVelocity,
+    /** LQR and Kalman filter on the roboRIO, sent to the Talons as voltage. */
+    kStateSpace
+  }
+
+  /**
+   * Extra voltage for one wheel after a ball goes through, so it gets back up to speed sooner.
+   * The size of the kick is learned from what's still wrong when the kick ends: a wheel that's
+   * still below target makes the next kick bigger, one that's already above target makes it
+   * smaller, and one inside the RPM tolerance leaves it alone. If a wheel overshoots too far too
+   * many times in a row, kicking is turned off for that wheel.
+   */
+  static class RecoveryKick {
+
+    private final String m_name;
+    private final double m_toleranceRPM;
+    private boolean m_enabled = ShooterConstants.kRecoveryKickEnabled;
+    // Learned dip the kick has to make up for.
+    private double m_learnedDipRPM = 0;
+    private int m_overshoots = 0;
+    private double m_kickEndTime = -1;
+    private double m_windowEndTime = -1;
+    // Target minus measured speed when the kick ended, NaN until then.
+    private double m_kickEndErrorRPM = Double.NaN;
+    private double m_maxRPM;
+
+    RecoveryKick(String name, double toleranceRPM) {
+      m_name = name;
+      m_toleranceRPM = toleranceRPM;
+    }
+
+    /** A ball just left the top of the tower. */
+    void start(double now, double rpm) {
+      m_kickEndTime = now + ShooterConstants.kRecoveryKickSeconds;
+      m_windowEndTime = now + ShooterConstants.kRecoveryWindowSeconds;
+      m_kickEndErrorRPM = Double.NaN;
+      m_maxRPM = rpm;
+    }
+
+    /**
+     * Tracks the recovery and returns the kick to add this cycle.
+     *
+     * @return kick in volts
+     */
+    double update(double now, double rpm, double targetRPM) {
+      if (m_windowEndTime < 0) {
+        return 0;
+      }
+      m_maxRPM = Math.max(m_maxRPM, rpm);
+      if (now >= m_kickEndTime && Double.isNaN(m_kickEndErrorRPM)) {
+        m_kickEndErrorRPM = targetRPM - rpm;
+      }
+
+      if (now >= m_windowEndTime) {
+        m_windowEndTime = -1;
+        m_kickEndTime = -1;
+        // The wheel always dips when a ball goes through, so learn from what's left once the kick
+        // has been applied instead of from the dip itself. That settles once the kick is right.
+        if (Math.abs(m_kickEndErrorRPM) > m_toleranceRPM) {
+          m_learnedDipRPM = Math.max(0,
+              m_learnedDipRPM + ShooterConstants.kRecoveryLearningRate * m_kickEndErrorRPM);
+        }
+
+        double overshoot = Math.max(0, m_maxRPM - targetRPM);
+        if (m_enabled && overshoot > ShooterConstants.kRecoveryMaxOvershootRPM) {
+          m_overshoots++;
+          if (m_overshoots >= ShooterConstants.kRecoveryMaxOvershoots) {
+            m_enabled = false;
+            DriverStation.reportWarning(
+                "Turning off the " + m_name + " shooter recovery kick, it keeps overshooting",
+                false);
+          }
+        } else {
+          m_overshoots = 0;
+        }
+        return 0;
+      }
+
+      if (!m_enabled || now >= m_kickEndTime) {
+        return 0;
+      }
+      return m_learnedDipRPM * ShooterConstants.kRecoveryKickVoltsPerRPM;
+    }
+
+    void cancel() {
+      m_kickEndTime = -1;
+      m_windowEndTime = -1;
+    }
+
+    boolean isEnabled() {
+      return m_enabled;
+    }
+
+    double getLearnedDipRPM() {
+      return m_learnedDipRPM;
+    }
+  }
+
   private final TalonFX m_topMotor = new TalonFX(ShooterConstants.kTopShooterMotorPort);
   private final TalonFX m_bottomMotor = new TalonFX(ShooterConstants.kBottomShooterMotorPort);
   private double topMotorTargetRPM;
@@ -35,7 +151,44 @@ public class ShooterSubsystem extends SubsystemBase {
   private final SimpleMotorFeedforward bottomFF = new SimpleMotorFeedforward(ShooterConstants.bottomkS, ShooterConstants.bottomkV,ShooterConstants.bottomkA );
 //  private BangBangController botBangBang = new BangBangController();
 
-  public ShooterSubsystem() {
+  private ShooterControlMode m_controlMode = ShooterConstants.kStateSpaceControl
+      ? ShooterControlMode.kStateSpace
+      : ShooterControlMode.kTalonVelocity;
+  // Whether the state space loops should be driving the motors, false while neutral.
+  private boolean m_stateSpaceEnabled = false;
+  private final LinearSystemLoop<N1, N1, N1> m_topLoop =
+      createFlywheelLoop(ShooterConstants.kTopFlywheelMomentOfInertia);
+  private final LinearSystemLoop<N1, N1, N1> m_bottomLoop =
+      createFlywheelLoop(ShooterConstants.kBottomFlywheelMomentOfInertia);
+
+  // Measured wheel acceleration in RPM per second, for the time to ready prediction.
+  private final LinearFilter m_topAccelerationFilter = LinearFilter.movingAverage(5);
+  private final LinearFilter m_bottomAccelerationFilter = LinearFilter.movingAverage(5);
+  private double m_topAcceleration = 0;
+  private double m_bottomAcceleration = 0;
+  private double m_lastTopRPM = 0;
+  private double m_lastBottomRPM = 0;
+  private double m_lastTimestamp = -1;
+
+  // Tower shot count, goes up when a ball goes into the wheels.
+  private final IntSupplier m_shotCount;
+  private int m_lastShotCount;
+  private final RecoveryKick m_topKick =
+      new RecoveryKick("top", ShooterConstants.kTopRPMTolerance);
+  private final RecoveryKick m_bottomKick =
+      new RecoveryKick("bottom", ShooterConstants.kBottomRPMTolerance);
+  private double m_topKickVolts = 0;
+  private double m_bottomKickVolts = 0;
+
+  /**
+   * Creates a new ShooterSubsystem.
+   *
+   * @param shotCount number of balls the tower has fed into the shooter
+   */
+  public ShooterSubsystem(IntSupplier shotCount) {
+    m_shotCount = shotCount;
+    m_lastShotCount = shotCount.getAsInt();
+
     m_bottomMotor.configFactoryDefault();
     m_topMotor.configFactoryDefault();
 
@@ -57,13 +210,13 @@ public class ShooterSubsystem extends SubsystemBase {
 
     m_bottomMotor.config_kF(0, ShooterConstants.bottomkV, 0);
     m_bottomMotor.config_kP(0, ShooterConstants.bottomkP, 0);
-    m_bottomMotor.config_kI(0, 0.0001, 0);
-    m_bottomMotor.config_IntegralZone(0, 150.0 / (600.0) * 2048.0);
+    m_bottomMotor.config_kI(0, ShooterConstants.kTalonVelocitykI, 0);
+    m_bottomMotor.config_IntegralZone(0, ShooterConstants.kTalonIntegralZoneRPM / (600.0) * 2048.0);
 
     m_topMotor.config_kF(0, ShooterConstants.topkV, 0);
     m_topMotor.config_kP(0, ShooterConstants.topkP, 0);
-    m_topMotor.config_kI(0, 0.0001, 0);
-    m_topMotor.config_IntegralZone(0, 150.0 / (600.0) * 2048.0);
+    m_topMotor.config_kI(0, ShooterConstants.kTalonVelocitykI, 0);
+    m_topMotor.config_IntegralZone(0, ShooterConstants.kTalonIntegralZoneRPM / (600.0) * 2048.0);
 
     m_bottomMotor.setStatusFramePeriod(StatusFrame.Status_1_General, 250);
     m_topMotor.setStatusFramePeriod(StatusFrame.Status_1_General, 250);
@@ -94,15 +247,36 @@ public class ShooterSubsystem extends SubsystemBase {
     bottomMotorTargetRPM = bottomMotorRPM;
     topMotorTargetRPM = topMotorRPM;
 
-    double bottomEncoderUnits = bottomMotorRPM / (600.0) * 2048.0;
-    double topEncoderUnits = topMotorRPM / (600.0) * 2048.0;
-    m_bottomMotor.set(ControlMode.Velocity, bottomEncoderUnits);
-    m_topMotor.set(ControlMode.Velocity, topEncoderUnits);
+    if (m_controlMode == ShooterControlMode.kStateSpace) {
+      // periodic() runs the loops every cycle, so a command only has to set the target once.
+      if (!m_stateSpaceEnabled) {
+        m_topLoop.reset(VecBuilder.fill(Units.rotationsPerMinuteToRadiansPerSecond(getTopRPM())));
+        m_bottomLoop.reset(
+            VecBuilder.fill(Units.rotationsPerMinuteToRadiansPerSecond(getBottomRPM())));
+        m_stateSpaceEnabled = true;
+      }
+      return;
+    }
+
+    setTalonVelocities();
 
 //    SmartDashboard.putNumber("Top target RPM", topMotorTargetRPM);
 //    SmartDashboard.putNumber("Bottom target RPM", bottomMotorTargetRPM);
   }
 
+  /**
+   * Sends the target speeds to the Talon velocity loops, with any recovery kick as arbitrary
+   * feedforward.
+   */
+  private void setTalonVelocities() {
+    double bottomEncoderUnits = bottomMotorTargetRPM / (600.0) * 2048.0;
+    double topEncoderUnits = topMotorTargetRPM / (600.0) * 2048.0;
+    m_bottomMotor.set(ControlMode.Velocity, bottomEncoderUnits,
+        DemandType.ArbitraryFeedForward, m_bottomKickVolts / 12);
+    m_topMotor.set(ControlMode.Velocity, topEncoderUnits,
+        DemandType.ArbitraryFeedForward, m_topKickVolts / 12);
+  }
+
   @Deprecated
   public void setShooterRPMNotImproved(double bottomMotorRPM, double topMotorRPM) {
     topMotorTargetRPM = topMotorRPM;
@@ -139,13 +313,61 @@ public class ShooterSubsystem extends SubsystemBase {
 
 
   public boolean isShooterWithinAcceptableError() {
-    return Math.abs(topMotorTargetRPM-getTopRPM()) < 30 && Math.abs(bottomMotorTargetRPM-getBottomRPM()) < 20;
+    return Math.abs(topMotorTargetRPM-getTopRPM()) < ShooterConstants.kTopRPMTolerance
+        && Math.abs(bottomMotorTargetRPM-getBottomRPM()) < ShooterConstants.kBottomRPMTolerance;
+  }
+
+  /**
+   * Predicts how long until isShooterWithinAcceptableError() will be true, from how fast each
+   * wheel is closing in on its target right now. See {@link #timeToReady}.
+   *
+   * @return seconds until both wheels are in range, 0 if they already are, or infinity if a wheel
+   *     isn't getting any closer
+   */
+  public double getTimeToReadySeconds() {
+    return Math.max(
+        timeToReady(topMotorTargetRPM - getTopRPM(), m_topAcceleration,
+            ShooterConstants.kTopRPMTolerance),
+        timeToReady(bottomMotorTargetRPM - getBottomRPM(), m_bottomAcceleration,
+            ShooterConstants.kBottomRPMTolerance));
+  }
+
+  /**
+   * Predicts how long until one wheel is in tolerance. The speed loop closes in on its target
+   * roughly exponentially, so the error is treated as first order, e(t) = e * exp(-t / tau), with
+   * tau = |e| / closing rate from the current slope. Going from e down to the tolerance takes
+   * tau * ln(|e| / tolerance), plus a margin for what the model misses.
+   *
+   * @param error        target minus measured RPM
+   * @param acceleration filtered rate of change of the measured RPM, RPM per second
+   * @param tolerance    error that counts as ready
+   * @return seconds until in tolerance, 0 if already there, or infinity if not getting closer
+   */
+  static double timeToReady(double error, double acceleration, double tolerance) {
+    if (Math.abs(error) < tolerance) {
+      return 0;
+    }
+    double closingRate = Math.signum(error) * acceleration;
+    if (closingRate <= 0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double timeConstant = Math.abs(error) / closingRate;
+    return timeConstant * Math.log(Math.abs(error) / tolerance)
+        + ShooterConstants.kTimeToReadyMarginSeconds;
   }
 
   public boolean isShooterWithinAcceptableError(double topTargetRPM, double botTargetRpm) {
     return Math.abs(topTargetRPM-getTopRPM()) < 60 && Math.abs(botTargetRpm-getBottomRPM()) < 40;
   }
 
+  public double getTopTargetRPM() {
+    return topMotorTargetRPM;
+  }
+
+  public double getBottomTargetRPM() {
+    return bottomMotorTargetRPM;
+  }
+
   public double getTopRPM() {
     return ((m_topMotor.getSelectedSensorVelocity()) / 2048.0) * 600;
   }
@@ -155,17 +377,113 @@ public class ShooterSubsystem extends SubsystemBase {
   }
 
   public void setSpeed1(double topSpeed, double bottomSpeed) {
+    m_stateSpaceEnabled = false;
     m_topMotor.set(ControlMode.PercentOutput, topSpeed);
     m_bottomMotor.set(ControlMode.PercentOutput, bottomSpeed);
   }
 
   public void setShooterToNeutral() {
+    m_stateSpaceEnabled = false;
+    topMotorTargetRPM = 0;
+    bottomMotorTargetRPM = 0;
+    m_topKick.cancel();
+    m_bottomKick.cancel();
+    m_topKickVolts = 0;
+    m_bottomKickVolts = 0;
     m_topMotor.set(ControlMode.PercentOutput, 0);
     m_bottomMotor.set(ControlMode.PercentOutput, 0);
   }
 
+  /**
+   * Sets how the flywheel velocity is controlled. The wheels go neutral until the next
+   * setShooterRPM call.
+   *
+   * @param mode Talon velocity PIDF or state space
+   */
+  public void setControlMode(ShooterControlMode mode) {
+    if (mode != m_controlMode) {
+      m_controlMode = mode;
+      setShooterToNeutral();
+    }
+  }
+
+  public ShooterControlMode getControlMode() {
+    return m_controlMode;
+  }
+
+  /**
+   * Builds the LQR and Kalman filter loop for one flywheel. The state is the Falcon's shaft speed
+   * in radians per second, with the wheel inertia reflected onto it.
+   *
+   * @param momentOfInertia flywheel moment of inertia seen by the motor, kg m^2
+   * @return the flywheel loop
+   */
+  static LinearSystemLoop<N1, N1, N1> createFlywheelLoop(double momentOfInertia) {
+    LinearSystem<N1, N1, N1> plant =
+        LinearSystemId.createFlywheelSystem(DCMotor.getFalcon500(1), momentOfInertia, 1.0);
+    KalmanFilter<N1, N1, N1> observer = new KalmanFilter<>(
+        Nat.N1(), Nat.N1(), plant,
+        VecBuilder.fill(ShooterConstants.kFlywheelModelStdDevRadiansPerSecond),
+        VecBuilder.fill(ShooterConstants.kFlywheelEncoderStdDevRadiansPerSecond),
+        0.020);
+    LinearQuadraticRegulator<N1, N1, N1> controller = new LinearQuadraticRegulator<>(
+        plant,
+        VecBuilder.fill(ShooterConstants.kFlywheelVelocityToleranceRadiansPerSecond),
+        VecBuilder.fill(ShooterConstants.kFlywheelControlEffortVolts),
+        0.020);
+    return new LinearSystemLoop<>(plant, controller, observer, 12.0, 0.020);
+  }
+
+  /**
+   * Runs one step of a flywheel loop and sends its voltage to the motor.
+   */
+  private static void runFlywheelLoop(LinearSystemLoop<N1, N1, N1> loop, TalonFX motor,
+      double targetRPM, double measuredRPM, double kickVolts) {
+    loop.setNextR(VecBuilder.fill(Units.rotationsPerMinuteToRadiansPerSecond(targetRPM)));
+    loop.correct(VecBuilder.fill(Units.rotationsPerMinuteToRadiansPerSecond(measuredRPM)));
+    loop.predict(0.020);
+    // Voltage compensation is on, so percent output is volts over 12.
+    motor.set(ControlMode.PercentOutput, (loop.getU(0) + kickVolts) / 12);
+  }
+
   @Override
   public void periodic() {
+    double timestamp = Timer.getFPGATimestamp();
+    double topRPM = getTopRPM();
+    double bottomRPM = getBottomRPM();
+    if (m_lastTimestamp > 0 && timestamp > m_lastTimestamp) {
+      double dt = timestamp - m_lastTimestamp;
+      m_topAcceleration = m_topAccelerationFilter.calculate((topRPM - m_lastTopRPM) / dt);
+      m_bottomAcceleration =
+          m_bottomAccelerationFilter.calculate((bottomRPM - m_lastBottomRPM) / dt);
+    }
+    m_lastTimestamp = timestamp;
+    m_lastTopRPM = topRPM;
+    m_lastBottomRPM = bottomRPM;
+
+    // Kick the wheels when a ball goes through them.
+    int shotCount = m_shotCount.getAsInt();
+    boolean spinning = topMotorTargetRPM > 0 || bottomMotorTargetRPM > 0;
+    if (shotCount != m_lastShotCount && spinning) {
+      m_topKick.start(timestamp, topRPM);
+      m_bottomKick.start(timestamp, bottomRPM);
+    }
+    m_lastShotCount = shotCount;
+    double topKickVolts = m_topKick.update(timestamp, topRPM, topMotorTargetRPM);
+    double bottomKickVolts = m_bottomKick.update(timestamp, bottomRPM, bottomMotorTargetRPM);
+    boolean kickChanged = topKickVolts != m_topKickVolts || bottomKickVolts != m_bottomKickVolts;
+    m_topKickVolts = topKickVolts;
+    m_bottomKickVolts = bottomKickVolts;
+
+    if (m_controlMode == ShooterControlMode.kStateSpace && m_stateSpaceEnabled) {
+      runFlywheelLoop(m_topLoop, m_topMotor, topMotorTargetRPM, topRPM, m_topKickVolts);
+      runFlywheelLoop(m_bottomLoop, m_bottomMotor, bottomMotorTargetRPM, bottomRPM,
+          m_bottomKickVolts);
+    } else if (m_controlMode == ShooterControlMode.kTalonVelocity && spinning && kickChanged) {
+      // Commands that only set the speed once still get the kick.
+      setTalonVelocities();
+    }
+
 //    SmartDashboard.putNumber("Top RPM", getTopRPM());
 //    SmartDashboard.putNumber("Bottom RPM", getBottomRPM());
 //    SmartDashboard.putNumber("Top Target RPM", topMotorTargetRPM);
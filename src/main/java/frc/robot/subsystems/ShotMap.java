@@ -0,0 +1,205 @@
+package frc.robot.subsystems;
+
+import frc.robot.Constants.ShooterConstants;
+
+/**
+ * Distance and radial velocity to shooter RPM lookup for both wheels. The {distance, rpm} tables
+ * from ShooterConstants get resampled once onto an evenly spaced grid, so a lookup is one index
+ * calculation and one bilinear interpolation for both wheels instead of a search through each
+ * table.
+ *
+ * <p>The tables are tuned standing still. Moving towards the hub carries the ball further, so for
+ * each radial velocity the grid uses the table speeds for the distance the ball would need from a
+ * standstill: the real distance minus how far the robot's velocity carries the ball during its
+ * time of flight.
+ *
+ * <p>At zero radial velocity the grid has a point on every table distance when the table distances
+ * are evenly spaced (the way the tuned tables are), so lookups give exactly the same answer as
+ * interpolating the tables. Distances and velocities outside the grid are clamped to its edges.
+ */
+public class ShotMap {
+
+  // Grid cells per table segment. More cells only matters if the table spacing is uneven.
+  private static final int kCellsPerSegment = 8;
+  // Time of flight depends on distance, a few rounds of substitution is plenty.
+  public static final int kTimeOfFlightIterations = 3;
+
+  /**
+   * Holder a lookup copies both wheel speeds into. Reuse one of these instead of making a new one
+   * per lookup.
+   */
+  public static class Shot {
+
+    public double distanceMeters;
+    public double radialVelocityMetersPerSecond;
+    /**
+     * How much closer (negative) or further the shot is aimed than the real distance, to make up
+     * for the radial velocity.
+     */
+    public double distanceCorrectionMeters;
+    public double topRPM;
+    public double bottomRPM;
+  }
+
+  private final double m_minDistance;
+  private final double m_maxDistance;
+  private final double m_cellsPerMeter;
+  private final int m_cells;
+  private final double m_maxRadialVelocity;
+  private final double m_velocityCellsPerMeterPerSecond;
+  private final int m_velocityCells;
+  // Row per radial velocity, {top, bottom, distance correction} per distance in each row.
+  private final double[] m_grid;
+
+  /**
+   * Creates a new ShotMap.
+   *
+   * @param topTable    {distance meters, rpm} rows for the top wheel, distance increasing
+   * @param bottomTable {distance meters, rpm} rows for the bottom wheel, distance increasing
+   */
+  public ShotMap(double[][] topTable, double[][] bottomTable) {
+    checkTable(topTable);
+    checkTable(bottomTable);
+
+    m_minDistance = Math.min(topTable[0][0], bottomTable[0][0]);
+    m_maxDistance = Math.max(
+        topTable[topTable.length - 1][0], bottomTable[bottomTable.length - 1][0]);
+    m_cells = (Math.max(topTable.length, bottomTable.length) - 1) * kCellsPerSegment;
+    m_cellsPerMeter = m_cells / (m_maxDistance - m_minDistance);
+
+    m_maxRadialVelocity = ShooterConstants.kShotMapMaxRadialVelocityMetersPerSecond;
+    m_velocityCells = ShooterConstants.kShotMapRadialVelocityCells;
+    m_velocityCellsPerMeterPerSecond = m_velocityCells / (2 * m_maxRadialVelocity);
+
+    m_grid = new double[(m_velocityCells + 1) * (m_cells + 1) * 3];
+    for (int row = 0; row <= m_velocityCells; row++) {
+      double radialVelocity = -m_maxRadialVelocity + row / m_velocityCellsPerMeterPerSecond;
+      for (int i = 0; i <= m_cells; i++) {
+        double distance = m_minDistance + i / m_cellsPerMeter;
+        double standstillDistance = standstillDistance(distance, radialVelocity);
+        int index = (row * (m_cells + 1) + i) * 3;
+        m_grid[index] = interpolateTable(topTable, standstillDistance);
+        m_grid[index + 1] = interpolateTable(bottomTable, standstillDistance);
+        m_grid[index + 2] = standstillDistance - distance;
+      }
+    }
+  }
+
+  /**
+   * Looks up both wheel speeds for a distance, standing still.
+   *
+   * @param distanceMeters distance from the target
+   * @param into           where to put the wheel speeds
+   */
+  public void lookup(double distanceMeters, Shot into) {
+    lookup(distanceMeters, 0, into);
+  }
+
+  /**
+   * Looks up both wheel speeds for a distance and radial velocity.
+   *
+   * @param distanceMeters               distance from the target
+   * @param radialVelocityMetersPerSecond robot velocity towards the target
+   * @param into                         where to put the wheel speeds
+   */
+  public void lookup(double distanceMeters, double radialVelocityMetersPerSecond, Shot into) {
+    double column = clamp((distanceMeters - m_minDistance) * m_cellsPerMeter, m_cells);
+    double row = clamp(
+        (radialVelocityMetersPerSecond + m_maxRadialVelocity) * m_velocityCellsPerMeterPerSecond,
+        m_velocityCells);
+    int i = Math.min((int) column, m_cells - 1);
+    int j = Math.min((int) row, m_velocityCells - 1);
+    double t = column - i;
+    double u = row - j;
+
+    int lower = (j * (m_cells + 1) + i) * 3;
+    int upper = lower + (m_cells + 1) * 3;
+    into.distanceMeters = distanceMeters;
+    into.radialVelocityMetersPerSecond = radialVelocityMetersPerSecond;
+    into.topRPM = bilinear(lower, upper, 0, t, u);
+    into.bottomRPM = bilinear(lower, upper, 1, t, u);
+    into.distanceCorrectionMeters = bilinear(lower, upper, 2, t, u);
+  }
+
+  private double bilinear(int lower, int upper, int offset, double t, double u) {
+    double lowerValue =
+        m_grid[lower + offset] + (m_grid[lower + 3 + offset] - m_grid[lower + offset]) * t;
+    double upperValue =
+        m_grid[upper + offset] + (m_grid[upper + 3 + offset] - m_grid[upper + offset]) * t;
+    return lowerValue + (upperValue - lowerValue) * u;
+  }
+
+  private static double clamp(double position, int cells) {
+    // Also catches NaN, which fails both comparisons.
+    if (!(position > 0)) {
+      return 0;
+    } else if (position > cells) {
+      return cells;
+    }
+    return position;
+  }
+
+  public double getMinDistance() {
+    return m_minDistance;
+  }
+
+  public double getMaxDistance() {
+    return m_maxDistance;
+  }
+
+  private static void checkTable(double[][] table) {
+    if (table.length < 2) {
+      throw new IllegalArgumentException("Shot table needs at least two rows");
+    }
+    for (int i = 1; i < table.length; i++) {
+      if (table[i][0] <= table[i - 1][0]) {
+        throw new IllegalArgumentException("Shot table distances must be increasing, row " + i);
+      }
+    }
+  }
+
+  /**
+   * Time of flight model for leading shots from a moving robot. MovingShotSolver, the shot map grid
+   * and ShotTableTuner all go through this so they agree.
+   *
+   * @param distanceMeters Limelight distance, to the vision tape
+   * @return seconds from leaving the wheels to reaching the hub
+   */
+  public static double timeOfFlightSeconds(double distanceMeters) {
+    return ShooterConstants.kTimeOfFlightBaseSeconds
+        + ShooterConstants.kTimeOfFlightSecondsPerMeter * distanceMeters;
+  }
+
+  /**
+   * Distance a shot from a standstill would need to land where a shot from this distance, moving
+   * at this radial velocity, lands.
+   *
+   * @param distance       Limelight distance in meters
+   * @param radialVelocity robot velocity towards the hub in meters per second
+   * @return standstill-equivalent Limelight distance in meters
+   */
+  public static double standstillDistance(double distance, double radialVelocity) {
+    double standstillDistance = distance;
+    for (int i = 0; i < kTimeOfFlightIterations; i++) {
+      standstillDistance =
+          Math.max(0, distance - radialVelocity * timeOfFlightSeconds(standstillDistance));
+    }
+    return standstillDistance;
+  }
+
+  /**
+   * Interpolates a table the slow way. Only used while building the grid.
+   */
+  private static double interpolateTable(double[][] table, double distance) {
+    if (distance <= table[0][0]) {
+      return table[0][1];
+    }
+    for (int i = 1; i < table.length; i++) {
+      if (distance <= table[i][0]) {
+        double t = (distance - table[i - 1][0]) / (table[i][0] - table[i - 1][0]);
+        return table[i - 1][1] + (table[i][1] - table[i - 1][1]) * t;
+      }
+    }
+    return table[table.length - 1][1];
+  }
+}
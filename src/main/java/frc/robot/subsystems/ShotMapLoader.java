@@ -0,0 +1,128 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads the shot map from a CSV file in the deploy directory, and loads it again whenever the file
+ * changes, so the shooter tables can be tuned without redeploying code. All the file reading and
+ * parsing happens on a background thread; the robot loop only ever picks up a finished ShotMap
+ * through get().
+ *
+ * <p>The file has one {distance in feet, top rpm, bottom rpm} row per line, with an optional
+ * header and # comments. A file that doesn't parse is reported and the last good map is kept.
+ */
+public class ShotMapLoader {
+
+  // Give scp a moment to finish writing before reading the file.
+  private static final long kSettleTimeMillis = 200;
+
+  private final Path m_file;
+  private final AtomicReference<ShotMap> m_shotMap;
+
+  /**
+   * Creates a new ShotMapLoader and starts watching the file.
+   *
+   * @param fileName name of the CSV file in the deploy directory
+   * @param fallback map to use until the file loads, or if it never does
+   */
+  public ShotMapLoader(String fileName, ShotMap fallback) {
+    m_file = Filesystem.getDeployDirectory().toPath().resolve(fileName);
+    m_shotMap = new AtomicReference<>(fallback);
+
+    Thread thread = new Thread(this::run, "ShotMapLoader");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Gets the newest shot map that loaded.
+   *
+   * @return the shot map
+   */
+  public ShotMap get() {
+    return m_shotMap.get();
+  }
+
+  private void run() {
+    load();
+
+    Path directory = m_file.getParent();
+    try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+      directory.register(watcher,
+          StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+      while (true) {
+        WatchKey key = watcher.take();
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (m_file.getFileName().equals(event.context())) {
+            changed = true;
+          }
+        }
+        key.reset();
+
+        if (changed) {
+          Thread.sleep(kSettleTimeMillis);
+          // Drop the events from the rest of the write.
+          WatchKey pending = watcher.poll();
+          if (pending != null) {
+            pending.pollEvents();
+            pending.reset();
+          }
+          load();
+        }
+      }
+    } catch (IOException | ClosedWatchServiceException e) {
+      DriverStation.reportWarning("Can't watch " + directory + " for shot map changes: " + e,
+          false);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void load() {
+    if (!Files.exists(m_file)) {
+      return;
+    }
+    try {
+      m_shotMap.set(parse(Files.readAllLines(m_file)));
+      DriverStation.reportWarning("Loaded shot map from " + m_file, false);
+    } catch (IOException | IllegalArgumentException e) {
+      DriverStation.reportWarning("Keeping the old shot map, can't load " + m_file + ": " + e,
+          false);
+    }
+  }
+
+  private static ShotMap parse(List<String> lines) {
+    List<double[]> top = new ArrayList<>();
+    List<double[]> bottom = new ArrayList<>();
+    for (String line : lines) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#") || Character.isLetter(line.charAt(0))) {
+        continue;
+      }
+      String[] columns = line.split(",");
+      if (columns.length != 3) {
+        throw new IllegalArgumentException("Expected 3 columns: " + line);
+      }
+      double distance = Units.feetToMeters(Double.parseDouble(columns[0].trim()));
+      top.add(new double[] {distance, Double.parseDouble(columns[1].trim())});
+      bottom.add(new double[] {distance, Double.parseDouble(columns[2].trim())});
+    }
+    return new ShotMap(top.toArray(new double[0][]), bottom.toArray(new double[0][]));
+  }
+}
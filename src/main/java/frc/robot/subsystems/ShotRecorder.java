@@ -0,0 +1,181 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.ShooterConstants;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Records every shot to a binary log on the RIO, for tuning the shot tables offline with
+ * frc.robot.tools.ShotTableTuner. A shot is the top tower sensor losing its ball while the
+ * shooter has a target speed. The drive team can label the last shot as a make or a miss.
+ *
+ * <p>The wheel speeds are the last ones read before the ball left the top sensor. By the time the
+ * shot count changes the ball has hit the wheels, and speeds read then include the dip.
+ *
+ * <p>File writes happen on a background thread, the robot loop only hands records over.
+ *
+ * <p>The file format is big endian: an int magic number and a short version, then records that
+ * each start with a type byte. A shot record is an int shot number followed by
+ * {@link #kShotFields} floats, in the order of the fields in {@link #recordShot()}. A label record
+ * is an int shot number and a byte, 1 for a make and 0 for a miss.
+ */
+public class ShotRecorder extends SubsystemBase {
+
+  public static final int kMagic = 0x53484F54; // "SHOT"
+  // 2: wheel speeds are from before the ball left the top sensor instead of after.
+  public static final short kVersion = 2;
+  public static final byte kShotRecord = 1;
+  public static final byte kLabelRecord = 2;
+  public static final int kShotFields = 12;
+
+  private final ShooterSubsystem m_shooter;
+  private final TowerSubsystem m_tower;
+  private final DriveSubsystem m_drive;
+  private final LimelightSubsystem m_limelight;
+
+  private final ExecutorService m_writer = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "ShotRecorder");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  });
+  // Only touched on the writer thread.
+  private DataOutputStream m_out;
+
+  private int m_lastTowerShotCount;
+  private int m_shotCount = 0;
+  // Shooter speeds from the last loop with no new shot.
+  private double m_feedTopTargetRPM = 0;
+  private double m_feedBottomTargetRPM = 0;
+  private double m_feedTopRPM = 0;
+  private double m_feedBottomRPM = 0;
+
+  /**
+   * Creates a new ShotRecorder.
+   */
+  public ShotRecorder(ShooterSubsystem shooter, TowerSubsystem tower, DriveSubsystem drive,
+      LimelightSubsystem limelight) {
+    m_shooter = shooter;
+    m_tower = tower;
+    m_drive = drive;
+    m_limelight = limelight;
+    m_lastTowerShotCount = tower.getShotCount();
+    m_writer.execute(this::open);
+  }
+
+  /**
+   * Labels the most recent shot.
+   *
+   * @param made whether the shot went in
+   */
+  public void labelLastShot(boolean made) {
+    if (m_shotCount == 0) {
+      return;
+    }
+    int shot = m_shotCount - 1;
+    m_writer.execute(() -> {
+      if (m_out == null) {
+        return;
+      }
+      try {
+        m_out.writeByte(kLabelRecord);
+        m_out.writeInt(shot);
+        m_out.writeByte(made ? 1 : 0);
+        m_out.flush();
+      } catch (IOException e) {
+        closeAfterError(e);
+      }
+    });
+  }
+
+  private void recordShot() {
+    float[] fields = {
+        (float) m_tower.getBallTracker().getLastShotTimestamp(),
+        (float) m_limelight.calculateDistance(),
+        (float) m_limelight.getTargetOffsetY(),
+        (float) m_limelight.getTargetOffsetX(),
+        (float) m_drive.getAimingController().getHeadingErrorDegrees(),
+        (float) m_feedTopTargetRPM,
+        (float) m_feedBottomTargetRPM,
+        (float) m_feedTopRPM,
+        (float) m_feedBottomRPM,
+        (float) m_drive.getFieldVelocityX(),
+        (float) m_drive.getFieldVelocityY(),
+        (float) m_limelight.getRadialVelocity()
+    };
+    int shot = m_shotCount++;
+    m_writer.execute(() -> {
+      if (m_out == null) {
+        return;
+      }
+      try {
+        m_out.writeByte(kShotRecord);
+        m_out.writeInt(shot);
+        for (float field : fields) {
+          m_out.writeFloat(field);
+        }
+        m_out.flush();
+      } catch (IOException e) {
+        closeAfterError(e);
+      }
+    });
+  }
+
+  private void open() {
+    File directory = RobotBase.isReal()
+        ? new File(ShooterConstants.kShotLogDirectory)
+        : new File(Filesystem.getOperatingDirectory(), "shots");
+    File file = new File(directory, "shots-" + System.currentTimeMillis() + ".bin");
+    try {
+      directory.mkdirs();
+      m_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      m_out.writeInt(kMagic);
+      m_out.writeShort(kVersion);
+      m_out.flush();
+    } catch (IOException e) {
+      closeAfterError(e);
+    }
+  }
+
+  private void closeAfterError(IOException e) {
+    DriverStation.reportWarning("Shot recorder stopped: " + e, false);
+    try {
+      if (m_out != null) {
+        m_out.close();
+      }
+    } catch (IOException ignored) {
+      // Already reported the first error.
+    }
+    m_out = null;
+  }
+
+  @Override
+  public void periodic() {
+    int towerShotCount = m_tower.getShotCount();
+    int newShots = towerShotCount - m_lastTowerShotCount;
+    m_lastTowerShotCount = towerShotCount;
+    if (newShots == 0) {
+      m_feedTopTargetRPM = m_shooter.getTopTargetRPM();
+      m_feedBottomTargetRPM = m_shooter.getBottomTargetRPM();
+      m_feedTopRPM = m_shooter.getTopRPM();
+      m_feedBottomRPM = m_shooter.getBottomRPM();
+      return;
+    }
+
+    // More than one ball can go through in a loop, they all get the same readings.
+    if (m_feedTopTargetRPM > 0 || m_feedBottomTargetRPM > 0) {
+      for (int i = 0; i < newShots; i++) {
+        recordShot();
+      }
+    }
+  }
+}
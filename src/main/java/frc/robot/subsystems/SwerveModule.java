@@ -4,7 +4,10 @@
 
 package frc.robot.subsystems;
 
+import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.DemandType;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
+import com.ctre.phoenix.motorcontrol.RemoteFeedbackDevice;
 import com.ctre.phoenix.motorcontrol.StatusFrame;
 import com.ctre.phoenix.motorcontrol.TalonFXFeedbackDevice;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonFX;
@@ -12,19 +15,88 @@ import com.ctre.phoenix.sensors.AbsoluteSensorRange;
 import com.ctre.phoenix.sensors.CANCoder;
 
 import com.ctre.phoenix.sensors.CANCoderStatusFrame;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
-import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
-import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardLayout;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Constants.DriveConstants;
 import frc.robot.Constants.ModuleConstants;
+import java.lang.invoke.VarHandle;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SwerveModule {
+
+  /**
+   * Where the drive wheel velocity loop runs. Modules can be set independently, so the two can be
+   * compared side by side on the same robot.
+   */
+  public enum DriveVelocityMode {
+    /** PID and feedforward on the roboRIO every 20 ms, sent to the Talon as percent output. */
+    kRoboRIO,
+    /** Talon FX velocity loop at 1 kHz, with the feedforward sent as arbitrary feedforward. */
+    kTalonFX
+  }
+
+  /** Where the steering loop runs. */
+  public enum SteeringMode {
+    /** Trapezoid profiled PID on the roboRIO against the CANCoder, sent as percent output. */
+    kRoboRIO,
+    /** Motion Magic on the turning Talon FX, with the CANCoder as its remote feedback sensor. */
+    kTalonMotionMagic
+  }
+
+  /**
+   * One reading of the module sensors. Everything that needs the module speed or angle reads it
+   * from the latest snapshot instead of going to the Talon/CANCoder again, so each status frame is
+   * only read once per odometry cycle.
+   *
+   * <p>refreshSensors() writes the module's snapshot in place and readers copy it out with
+   * readSnapshot() into a holder of their own, so nothing allocates. Reuse one holder per reader
+   * thread.
+   */
+  public static final class SensorSnapshot {
+
+    /** FPGA time the sensors were read, in seconds. */
+    public double timestampSeconds;
+    public double speedMetersPerSecond;
+    public double angleRadians;
+    /**
+     * Continuous (not wrapped) CANCoder position, the same value the Talon sees remotely. Only
+     * read for Motion Magic steering, NaN otherwise.
+     */
+    public double turnPositionDegrees;
+    /** How long it had been since the CANCoder sent a new frame when this was read. */
+    public double turnFrameAgeSeconds;
+
+    public SensorSnapshot() {}
+
+    /**
+     * Gets how old this snapshot is.
+     * @param nowSeconds current FPGA time
+     * @return age in seconds
+     */
+    public double getAgeSeconds(double nowSeconds) {
+      return nowSeconds - timestampSeconds;
+    }
+
+    /**
+     * Whether this snapshot should not be trusted for control, because the CANCoder stopped
+     * sending frames or nobody has refreshed the snapshot recently.
+     * @param nowSeconds current FPGA time
+     * @return true if the data is stale
+     */
+    public boolean isStale(double nowSeconds) {
+      return turnFrameAgeSeconds > ModuleConstants.kSensorStaleThresholdSeconds
+          || getAgeSeconds(nowSeconds) > ModuleConstants.kSensorStaleThresholdSeconds;
+    }
+  }
+
   private final WPI_TalonFX m_driveMotor;
   private final WPI_TalonFX m_turningMotor;
 
@@ -44,15 +116,17 @@ public class SwerveModule {
   // ShuffleboardTab PIDtab = Shuffleboard.getTab("PID Tuning");
 
 
-  // Using a TrapezoidProfile PIDController to allow for smooth turning
-  private final ProfiledPIDController m_turnPIDController =
-      new ProfiledPIDController(
+  // Using a trapezoid profiled PID controller to allow for smooth turning. Input is limited to -pi
+  // to pi and continuous.
+  private final ContinuousProfiledPIDController m_turnPIDController =
+      new ContinuousProfiledPIDController(
           ModuleConstants.kPModuleTurnController,
           ModuleConstants.kIModuleTurnController, // 0
           ModuleConstants.kDModuleTurnController,
-          new TrapezoidProfile.Constraints(
-              ModuleConstants.kMaxModuleAngularSpeedRadiansPerSecond,
-              ModuleConstants.kMaxModuleAngularAccelerationRadiansPerSecondSquared));
+          ModuleConstants.kMaxModuleAngularSpeedRadiansPerSecond,
+          ModuleConstants.kMaxModuleAngularAccelerationRadiansPerSecondSquared,
+          -Math.PI,
+          Math.PI);
 
   // In the pose example.
   // NOTE: The passed-in gains must have units consistent with the distance units, or a compile-time error will be thrown.
@@ -69,6 +143,23 @@ public class SwerveModule {
 
   private boolean done = false;
 
+  // Written in place by refreshSensors() on the odometry notifier. Same scheme as
+  // OdometrySampleBuffer: the sequence is -1 while it's being written, so a reader can tell it
+  // raced the writer and try again.
+  private final SensorSnapshot m_snapshot = new SensorSnapshot();
+  private final AtomicLong m_snapshotSequence = new AtomicLong(0);
+  private long m_nextSnapshotSequence = 1;
+  private double m_lastTurnFrameTimestamp = Double.NaN;
+  private double m_lastTurnFrameReceivedSeconds = 0;
+  // Main loop copy of the snapshot.
+  private final SensorSnapshot m_controlSnapshot = new SensorSnapshot();
+  private boolean m_wasStale = false;
+
+  private DriveVelocityMode m_driveVelocityMode = DriveVelocityMode.kRoboRIO;
+  private double m_driveVelocityError = 0;
+  // Also read by refreshSensors(), to skip the continuous position when nothing needs it.
+  private volatile SteeringMode m_steeringMode = SteeringMode.kRoboRIO;
+
   // shuffleboard stuff
   ShuffleboardLayout shuffleboardContainer;
 
@@ -106,34 +197,174 @@ public class SwerveModule {
 
     // Configure the encoders for both motors
     m_driveMotor.configSelectedFeedbackSensor(TalonFXFeedbackDevice.IntegratedSensor, 0, 0);
+
+    // Gains for the onboard velocity loop. kF stays 0, the feedforward is sent with each setpoint.
+    m_driveMotor.config_kP(0, ModuleConstants.kPModuleDriveTalon, 0);
+    m_driveMotor.config_kI(0, 0, 0);
+    m_driveMotor.config_kD(0, 0, 0);
+    m_driveMotor.config_kF(0, 0, 0);
+    // Makes percent output mean volts / 12 for both the RIO loop and the arbitrary feedforward.
+    m_driveMotor.configVoltageCompSaturation(12);
+    m_driveMotor.enableVoltageCompensation(true);
     m_turnEncoder = new CANCoder(turningEncoderChannel);
     m_turnEncoder.configAbsoluteSensorRange(AbsoluteSensorRange.Signed_PlusMinus180);
     m_turnEncoder.configMagnetOffset(angleZero);
     m_turnEncoder.configSensorDirection(encoderReversed);
-    m_turnEncoder.setStatusFramePeriod(CANCoderStatusFrame.SensorData, 20);
+    m_turnEncoder.setStatusFramePeriod(CANCoderStatusFrame.SensorData,
+        ModuleConstants.kOdometryStatusFramePeriodMs);
     m_turnEncoder.setStatusFramePeriod(CANCoderStatusFrame.VbatAndFaults, 250);
 
+    // CANCoder as the turning Talon's remote sensor, used by the onboard steering mode. Its
+    // SensorData frame period above is also how often the Talon gets new positions.
+    m_turningMotor.configRemoteFeedbackFilter(m_turnEncoder, 0);
+    m_turningMotor.configSelectedFeedbackSensor(RemoteFeedbackDevice.RemoteSensor0, 0, 0);
+    // A reversed CANCoder counts the other way, so the Talon needs the opposite phase to match.
+    m_turningMotor.setSensorPhase(ModuleConstants.kTurningRemoteSensorPhase ^ encoderReversed);
+    m_turningMotor.config_kP(0, ModuleConstants.kPModuleTurnTalon, 0);
+    m_turningMotor.config_kI(0, 0, 0);
+    m_turningMotor.config_kD(0, 0, 0);
+    m_turningMotor.config_kF(0, ModuleConstants.kFModuleTurnTalon, 0);
+    m_turningMotor.configMotionCruiseVelocity(ModuleConstants.kModuleTurnTalonCruiseVelocity, 0);
+    m_turningMotor.configMotionAcceleration(ModuleConstants.kModuleTurnTalonAcceleration, 0);
+
     m_turningMotor.setStatusFramePeriod(StatusFrame.Status_1_General, 250);
     m_turningMotor.setStatusFramePeriod(StatusFrame.Status_2_Feedback0, 250);
 
     m_driveMotor.setStatusFramePeriod(StatusFrame.Status_1_General, 250);
-    m_driveMotor.setStatusFramePeriod(StatusFrame.Status_2_Feedback0, 20);
-
-    // Limit the PID Controller's input range between -pi and pi and set the input
-    // to be continuous.
-    m_turnPIDController.enableContinuousInput(-Math.PI, Math.PI);
+    m_driveMotor.setStatusFramePeriod(StatusFrame.Status_2_Feedback0,
+        ModuleConstants.kOdometryStatusFramePeriodMs);
 
     // Shuffleboard
     shuffleboardContainer = container;
   }
 
 
+  /**
+   * Reads the drive velocity and CANCoder angle once and publishes them as the module's snapshot.
+   * Called once per odometry cycle from one thread; nothing else should read these sensors
+   * directly.
+   */
+  public void refreshSensors() {
+    double now = Timer.getFPGATimestamp();
+
+    double velocity = m_driveMotor.getSelectedSensorVelocity();
+    double absolutePosition = m_turnEncoder.getAbsolutePosition();
+    // Timestamp of the frame the position above came from.
+    double turnFrameTimestamp = m_turnEncoder.getLastTimestamp();
+    double position = m_steeringMode == SteeringMode.kTalonMotionMagic
+        ? m_turnEncoder.getPosition()
+        : Double.NaN;
+
+    // The CANCoder timestamp only moves when a new frame arrives.
+    if (turnFrameTimestamp != m_lastTurnFrameTimestamp) {
+      m_lastTurnFrameTimestamp = turnFrameTimestamp;
+      m_lastTurnFrameReceivedSeconds = now;
+    }
+
+    publishSnapshot(now, ModuleConstants.kDrivetoMetersPerSecond * velocity,
+        Math.toRadians(absolutePosition), position, now - m_lastTurnFrameReceivedSeconds);
+  }
+
+  /**
+   * Writes the snapshot. Only refreshSensors() and tests that need a known sensor reading call
+   * this, and only from one thread.
+   */
+  void publishSnapshot(double timestampSeconds, double speedMetersPerSecond,
+      double angleRadians, double turnPositionDegrees, double turnFrameAgeSeconds) {
+    m_snapshotSequence.set(-1);
+    VarHandle.storeStoreFence();
+
+    m_snapshot.timestampSeconds = timestampSeconds;
+    m_snapshot.speedMetersPerSecond = speedMetersPerSecond;
+    m_snapshot.angleRadians = angleRadians;
+    m_snapshot.turnPositionDegrees = turnPositionDegrees;
+    m_snapshot.turnFrameAgeSeconds = turnFrameAgeSeconds;
+
+    m_snapshotSequence.set(m_nextSnapshotSequence++);
+  }
+
+  /**
+   * Copies the latest sensor snapshot out. If it keeps racing the writer, the holder is left as it
+   * was, and its timestamp will make it go stale.
+   * @param into where to copy the snapshot
+   * @return false if the copy failed
+   */
+  public boolean readSnapshot(SensorSnapshot into) {
+    for (int attempt = 0; attempt < 3; attempt++) {
+      long sequence = m_snapshotSequence.get();
+      if (sequence < 0) {
+        continue;
+      }
+      double timestampSeconds = m_snapshot.timestampSeconds;
+      double speedMetersPerSecond = m_snapshot.speedMetersPerSecond;
+      double angleRadians = m_snapshot.angleRadians;
+      double turnPositionDegrees = m_snapshot.turnPositionDegrees;
+      double turnFrameAgeSeconds = m_snapshot.turnFrameAgeSeconds;
+      VarHandle.loadLoadFence();
+      if (m_snapshotSequence.get() == sequence) {
+        into.timestampSeconds = timestampSeconds;
+        into.speedMetersPerSecond = speedMetersPerSecond;
+        into.angleRadians = angleRadians;
+        into.turnPositionDegrees = turnPositionDegrees;
+        into.turnFrameAgeSeconds = turnFrameAgeSeconds;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether the latest sensor snapshot is too old to control the module with. Main loop only.
+   * @return true if the sensor data is stale
+   */
+  public boolean isSensorDataStale() {
+    readSnapshot(m_controlSnapshot);
+    return m_controlSnapshot.isStale(Timer.getFPGATimestamp());
+  }
+
+  /**
+   * Sets where the drive velocity loop runs for this module.
+   * @param mode RIO or Talon FX velocity loop
+   */
+  public void setDriveVelocityMode(DriveVelocityMode mode) {
+    m_driveVelocityMode = mode;
+    m_drivePIDController.reset();
+  }
+
+  public DriveVelocityMode getDriveVelocityMode() {
+    return m_driveVelocityMode;
+  }
+
+  /**
+   * Sets where the steering loop runs for this module.
+   * @param mode RIO or Talon FX Motion Magic steering
+   */
+  public void setSteeringMode(SteeringMode mode) {
+    m_steeringMode = mode;
+    readSnapshot(m_controlSnapshot);
+    m_turnPIDController.reset(m_controlSnapshot.angleRadians);
+  }
+
+  public SteeringMode getSteeringMode() {
+    return m_steeringMode;
+  }
+
+  /**
+   * Gets the drive velocity tracking error from the last setDesiredState() call, for comparing the
+   * two velocity loop modes.
+   * @return desired minus measured wheel speed, in meters per second
+   */
+  public double getDriveVelocityError() {
+    return m_driveVelocityError;
+  }
+
   /**
    * Gets the heading of the module
    * @return the absolute position of the CANCoder
    */
   public double getModuleHeading(){
-    return this.m_turnEncoder.getAbsolutePosition() % 360;
+    readSnapshot(m_controlSnapshot);
+    return Math.toDegrees(m_controlSnapshot.angleRadians) % 360;
   }
 
   /**
@@ -141,13 +372,10 @@ public class SwerveModule {
    * @return The current state of the module.
    */
   public SwerveModuleState getState() {
-    double m_speedMetersPerSecond =
-        ModuleConstants.kDrivetoMetersPerSecond * m_driveMotor.getSelectedSensorVelocity();
-
-    double m_turningRadians =
-        (Math.PI / 180) * m_turnEncoder.getAbsolutePosition();
-
-    return new SwerveModuleState(m_speedMetersPerSecond, new Rotation2d(m_turningRadians));
+    SensorSnapshot snapshot = new SensorSnapshot();
+    readSnapshot(snapshot);
+    return new SwerveModuleState(snapshot.speedMetersPerSecond,
+        new Rotation2d(snapshot.angleRadians));
   }
 
 
@@ -156,34 +384,86 @@ public class SwerveModule {
    * @param desiredState Desired state with speed and angle.
    */
   public void setDesiredState(SwerveModuleState desiredState) {
-    double m_speedMetersPerSecond =
-        ModuleConstants.kDrivetoMetersPerSecond * m_driveMotor.getSelectedSensorVelocity();
+    setDesiredState(desiredState.speedMetersPerSecond, desiredState.angle.getRadians());
+  }
 
-    double m_turnRadians =
-        ((2 * Math.PI)/360) * m_turnEncoder.getAbsolutePosition();
+  /**
+   * Sets the desired state for the module without creating any state objects. This is the path
+   * used by the drive every loop, so the optimization is done with plain doubles.
+   * @param speedMetersPerSecond desired wheel speed
+   * @param angleRadians desired module angle, counterclockwise positive
+   */
+  public void setDesiredState(double speedMetersPerSecond, double angleRadians) {
+    SensorSnapshot snapshot = m_controlSnapshot;
+    readSnapshot(snapshot);
+    double m_speedMetersPerSecond = snapshot.speedMetersPerSecond;
+    double m_turnRadians = snapshot.angleRadians;
+
+    // Don't steer off an angle we haven't heard about in a while, the module could spin forever,
+    // and don't drive a wheel that could be pointing anywhere.
+    boolean stale = snapshot.isStale(Timer.getFPGATimestamp());
+    if (stale && !m_wasStale) {
+      DriverStation.reportWarning(
+          shuffleboardContainer.getTitle() + " sensor data is stale, stopping the module.", false);
+    }
+    m_wasStale = stale;
+    if (stale) {
+      m_driveVelocityError = 0;
+      m_turningMotor.set(0);
+      m_driveMotor.set(0);
+      return;
+    }
 
     // Optimize the reference state to avoid spinning further than 90 degrees
-    SwerveModuleState state =
-        SwerveModuleState.optimize(desiredState, new Rotation2d(m_turnRadians));
+    if (Math.abs(MathUtil.angleModulus(angleRadians - m_turnRadians)) > Math.PI / 2) {
+      speedMetersPerSecond = -speedMetersPerSecond;
+      angleRadians = MathUtil.angleModulus(angleRadians + Math.PI);
+    }
 
 //    stop the code to stop it from moving if the speed is very, very small
-    if (Math.abs(state.speedMetersPerSecond) <= 0.01){
+    if (Math.abs(speedMetersPerSecond) <= 0.01){
+      m_driveVelocityError = -m_speedMetersPerSecond;
       m_turningMotor.set(0);
       m_driveMotor.set(0);
       return;
     }
+    m_driveVelocityError = speedMetersPerSecond - m_speedMetersPerSecond;
+
+    if (m_driveVelocityMode == DriveVelocityMode.kTalonFX) {
+      // Velocity is in encoder ticks per 100 ms, the feedforward as a fraction of 12 volts.
+      m_driveMotor.set(
+          ControlMode.Velocity,
+          speedMetersPerSecond / ModuleConstants.kDrivetoMetersPerSecond,
+          DemandType.ArbitraryFeedForward,
+          driveFeedforward.calculate(speedMetersPerSecond) / 12);
+    } else {
+      // Calculate the drive output from the drive PID controller.
+      final double driveOutput =
+          m_drivePIDController.calculate(m_speedMetersPerSecond, speedMetersPerSecond)
+               + driveFeedforward.calculate(speedMetersPerSecond);
+      m_driveMotor.set(driveOutput/12);
+    }
 
-    // Calculate the drive output from the drive PID controller.
-    final double driveOutput =
-        m_drivePIDController.calculate(m_speedMetersPerSecond, state.speedMetersPerSecond)
-             + driveFeedforward.calculate(state.speedMetersPerSecond);
-
-    // Calculate the turning motor output from the turning PID controller.
-    final double turnOutput =
-        m_turnPIDController.calculate(m_turnRadians, state.angle.getRadians())
-            + turnFeedForward.calculate(m_turnPIDController.getSetpoint().velocity);
-    m_driveMotor.set(driveOutput/12);
-    m_turningMotor.set(turnOutput/12);
+    if (m_steeringMode == SteeringMode.kTalonMotionMagic) {
+      if (Double.isNaN(snapshot.turnPositionDegrees)) {
+        // Just switched over, the notifier hasn't read the continuous position yet.
+        m_turningMotor.set(0);
+        return;
+      }
+      // The Talon sees the continuous CANCoder position, so add the shortest way to the target
+      // angle onto where it is now instead of sending an absolute angle.
+      double deltaRadians = MathUtil.angleModulus(angleRadians - m_turnRadians);
+      double targetPosition =
+          snapshot.turnPositionDegrees / 360 * ModuleConstants.kTurningCANcoderCPR
+              + deltaRadians / (2 * Math.PI) * ModuleConstants.kTurningCANcoderCPR;
+      m_turningMotor.set(ControlMode.MotionMagic, targetPosition);
+    } else {
+      // Calculate the turning motor output from the turning PID controller.
+      final double turnOutput =
+          m_turnPIDController.calculate(m_turnRadians, angleRadians)
+              + turnFeedForward.calculate(m_turnPIDController.getSetpointVelocity());
+      m_turningMotor.set(turnOutput/12);
+    }
   }
 
   /**
@@ -210,6 +490,8 @@ public class SwerveModule {
   }
 
   public void periodic_func() {
+    SmartDashboard.putNumber(shuffleboardContainer.getTitle() + " drive error",
+        m_driveVelocityError);
 //    SmartDashboard.putNumber(shuffleboardContainer.getTitle() + " ABS", m_turnEncoder.getAbsolutePosition());
 //    SmartDashboard.putNumber(shuffleboardContainer.getTitle() + " pos", m_turnEncoder.getPosition());
   }
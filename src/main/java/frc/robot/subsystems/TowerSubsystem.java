@@ -9,6 +9,7 @@ import com.ctre.phoenix.motorcontrol.StatusFrame;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
 
 import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.TowerConstants;
@@ -20,6 +21,7 @@ public class TowerSubsystem extends SubsystemBase {
 
   private final DigitalInput bottomTowerSensor;
   private final DigitalInput topTowerSensor;
+  private final BallTracker m_ballTracker;
 
   public TowerSubsystem() {
     m_topTowerMotor = new WPI_TalonSRX(TowerConstants.topTowerFeedMotorPort);
@@ -27,6 +29,7 @@ public class TowerSubsystem extends SubsystemBase {
 
     bottomTowerSensor = new DigitalInput(TowerConstants.bottomTowerSensorPort);
     topTowerSensor = new DigitalInput(TowerConstants.topTowerSensorPort);
+    m_ballTracker = new BallTracker(bottomTowerSensor, topTowerSensor);
 
     m_topTowerMotor.configFactoryDefault();
     m_bottomTowerMotor.configFactoryDefault();
@@ -47,29 +50,75 @@ public class TowerSubsystem extends SubsystemBase {
   public void setTowerMotorsSpeed(double speed) {
     m_topTowerMotor.set(speed);
     m_bottomTowerMotor.set(speed);
+    updateDirection();
   }
 
   public void setTopMotorOutputManual(double output) {
     m_topTowerMotor.set(output);
+    updateDirection();
   }
 
   public void setBottomMotorOutputManual(double output) {
     m_bottomTowerMotor.set(output);
+    updateDirection();
   }
 
   public void setTowerFullPower() {
     m_topTowerMotor.set(1.0);
     m_bottomTowerMotor.set(1.0);
+    updateDirection();
   }
 
   public void setTowerThirdPower() {
     m_topTowerMotor.set(0.334);
     m_bottomTowerMotor.set(0.34);
+    updateDirection();
   }
 
   public void setTowerOff() {
     m_topTowerMotor.set(0);
     m_bottomTowerMotor.set(0);
+    updateDirection();
+  }
+
+  /**
+   * Feeds balls into the shooter one at a time, driving the two tower motors separately. The top
+   * ball is held at the top sensor until the shooter will be ready by the time it gets to the
+   * wheels, and the ball behind it follows it up and gets staged at the top sensor, so it can go
+   * as soon as the wheels recover instead of starting from the bottom of the tower.
+   *
+   * @param canShoot           whether we're allowed to shoot at all (target, aim)
+   * @param timeToReadySeconds predicted time until the shooter is ready for a ball
+   */
+  public void feedShooter(boolean canShoot, double timeToReadySeconds) {
+    // Go off the tracker's edges, not a fresh poll of the sensors, so this agrees with the count.
+    boolean ballAtTop = m_ballTracker.isBallAtTop();
+    boolean ballBelow = m_ballTracker.hasBallBelowTop();
+    boolean release = canShoot
+        && timeToReadySeconds <= TowerConstants.kBallTransitTimeSeconds
+        && Timer.getFPGATimestamp() - m_ballTracker.getLastShotTimestamp()
+            >= TowerConstants.kMinShotSpacingSeconds;
+
+    double topOutput = 0;
+    double bottomOutput = 0;
+    if (ballAtTop) {
+      // Hold the top ball until it's time, and don't push the next ball into it while it waits.
+      topOutput = release ? TowerConstants.towerMotorSpeed : 0;
+      bottomOutput = release && ballBelow ? TowerConstants.kStagingSpeed : 0;
+    } else if (ballBelow) {
+      // Nothing at the top, bring the next ball up. If the shooter is already waiting for it, it
+      // doesn't have to stop at the sensor.
+      topOutput = release ? TowerConstants.towerMotorSpeed : TowerConstants.kStagingSpeed;
+      bottomOutput = topOutput;
+    }
+    m_topTowerMotor.set(topOutput);
+    m_bottomTowerMotor.set(bottomOutput);
+    updateDirection();
+  }
+
+  // Edges mean something different when the tower is pushing balls back out.
+  private void updateDirection() {
+    m_ballTracker.setReversed(m_topTowerMotor.get() < 0 || m_bottomTowerMotor.get() < 0);
   }
 
   public boolean getIsBallInBottom(){
@@ -82,9 +131,34 @@ public class TowerSubsystem extends SubsystemBase {
     return !topTowerSensor.get();
   }
 
+  /**
+   * Gets the number of balls in the tower, counted from the sensor edges so it includes balls
+   * between the two sensors.
+   *
+   * @return number of balls
+   */
+  public int getBallCount() {
+    return m_ballTracker.getBallCount();
+  }
+
+  /**
+   * Gets the number of balls that have gone into the shooter since the robot started.
+   *
+   * @return shot count
+   */
+  public int getShotCount() {
+    return m_ballTracker.getShotCount();
+  }
+
+  public BallTracker getBallTracker() {
+    return m_ballTracker;
+  }
+
   @Override
   public void periodic() {
 //    SmartDashboard.putBoolean("Bottom Tower Sensor", getIsBallInBottom());
 //    SmartDashboard.putBoolean("Top Tower Sensor", getIsBallInTop());
+    SmartDashboard.putNumber("Tower ball count", m_ballTracker.getBallCount());
+    SmartDashboard.putNumber("Tower transit time", m_ballTracker.getLastTransitSeconds());
   }
 }
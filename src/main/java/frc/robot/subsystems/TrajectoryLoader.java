@@ -0,0 +1,223 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryUtil;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants.PathWeaverConstants;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Loads PathWeaver trajectories on background threads, so building the autos at robotInit doesn't
+ * have to parse every JSON file before the robot is ready. Each file is loaded once and cached.
+ * The trajectories for the auto picked in the chooser can be moved to the front of the queue with
+ * {@link #prioritize(Object)}, and a command that needs its trajectory before it's loaded just
+ * loads it itself in {@link #await(String)}.
+ *
+ * <p>If the build made a BinaryTrajectory file next to the JSON, that gets loaded instead. Either
+ * way the trajectory comes out with TrajectoryRetimer's timing.
+ *
+ * <p>Cached trajectories have an unmodifiable state list, so they're safe to share between
+ * commands and threads.
+ */
+public class TrajectoryLoader {
+
+  private static TrajectoryLoader instance = null;
+
+  private static final int kNormalPriority = 0;
+  private static final int kHighPriority = 1;
+
+  /**
+   * One trajectory file. Whichever thread claims it first loads it, everyone else waits on the
+   * future.
+   */
+  private static class Entry {
+
+    final String path;
+    final CompletableFuture<Trajectory> future = new CompletableFuture<>();
+    final AtomicBoolean claimed = new AtomicBoolean(false);
+
+    Entry(String path) {
+      this.path = path;
+    }
+  }
+
+  /**
+   * Queued load, higher priority first and then in the order they were queued.
+   */
+  private static class LoadTask implements Runnable, Comparable<LoadTask> {
+
+    final Entry entry;
+    final int priority;
+    final long order;
+
+    LoadTask(Entry entry, int priority, long order) {
+      this.entry = entry;
+      this.priority = priority;
+      this.order = order;
+    }
+
+    @Override
+    public void run() {
+      load(entry);
+    }
+
+    @Override
+    public int compareTo(LoadTask other) {
+      if (priority != other.priority) {
+        return Integer.compare(other.priority, priority);
+      }
+      return Long.compare(order, other.order);
+    }
+  }
+
+  private final Map<String, Entry> m_entries = new ConcurrentHashMap<>();
+  private final ThreadPoolExecutor m_executor;
+  private final AtomicLong m_nextOrder = new AtomicLong();
+
+  // Only touched on the main thread while the autos are being built.
+  private final Map<Object, List<String>> m_ownerPaths = new IdentityHashMap<>();
+  private List<String> m_trackedPaths = null;
+  private Object m_prioritizedOwner = null;
+
+  private TrajectoryLoader() {
+    m_executor = new ThreadPoolExecutor(
+        PathWeaverConstants.kTrajectoryLoaderThreads, PathWeaverConstants.kTrajectoryLoaderThreads,
+        0, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "TrajectoryLoader");
+          thread.setDaemon(true);
+          thread.setPriority(Thread.MIN_PRIORITY);
+          return thread;
+        });
+  }
+
+  public static TrajectoryLoader getInstance() {
+    if (instance == null) {
+      instance = new TrajectoryLoader();
+    }
+    return instance;
+  }
+
+  /**
+   * Queues a trajectory to be loaded in the background, if it isn't already.
+   *
+   * @param path path to the PathWeaver JSON, relative to the deploy directory
+   * @return the trajectory once it's loaded, or null if it couldn't be
+   */
+  public CompletableFuture<Trajectory> load(String path) {
+    if (m_trackedPaths != null) {
+      m_trackedPaths.add(path);
+    }
+    Entry entry = m_entries.computeIfAbsent(path, key -> {
+      Entry created = new Entry(key);
+      m_executor.execute(new LoadTask(created, kNormalPriority, m_nextOrder.getAndIncrement()));
+      return created;
+    });
+    return entry.future;
+  }
+
+  /**
+   * Gets a trajectory, loading it on this thread if no background thread has started on it yet.
+   *
+   * @param path path to the PathWeaver JSON, relative to the deploy directory
+   * @return the trajectory, or null if it couldn't be loaded
+   */
+  public Trajectory await(String path) {
+    CompletableFuture<Trajectory> future = load(path);
+    if (!future.isDone()) {
+      load(m_entries.get(path));
+    }
+    return future.join();
+  }
+
+  /**
+   * Builds something that creates commands with {@link #load(String)}, and remembers which
+   * trajectories it asked for so they can be prioritized later.
+   *
+   * @param factory creates the command, usually an auto
+   * @param <T>     type of the command
+   * @return whatever the factory made
+   */
+  public <T> T trackPaths(Supplier<T> factory) {
+    List<String> paths = new ArrayList<>();
+    m_trackedPaths = paths;
+    try {
+      T owner = factory.get();
+      m_ownerPaths.put(owner, Collections.unmodifiableList(paths));
+      return owner;
+    } finally {
+      m_trackedPaths = null;
+    }
+  }
+
+  /**
+   * Moves the trajectories for something built with {@link #trackPaths(Supplier)} to the front of
+   * the queue. Cheap to call every loop, it only does anything when the owner changes.
+   *
+   * @param owner what the trajectories were tracked for, like the selected auto
+   */
+  public void prioritize(Object owner) {
+    if (owner == m_prioritizedOwner) {
+      return;
+    }
+    m_prioritizedOwner = owner;
+    List<String> paths = m_ownerPaths.get(owner);
+    if (paths == null) {
+      return;
+    }
+    for (String path : paths) {
+      Entry entry = m_entries.get(path);
+      if (entry != null && !entry.claimed.get()) {
+        // The normal priority task is still queued, whichever of the two runs first does the work.
+        m_executor.execute(new LoadTask(entry, kHighPriority, m_nextOrder.getAndIncrement()));
+      }
+    }
+  }
+
+  private static void load(Entry entry) {
+    if (!entry.claimed.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      Path trajectoryPath = Filesystem.getDeployDirectory().toPath().resolve(entry.path);
+      Path binaryPath = BinaryTrajectory.binaryPathFor(trajectoryPath);
+      if (Files.isRegularFile(binaryPath)) {
+        try {
+          entry.future.complete(BinaryTrajectory.read(binaryPath));
+          return;
+        } catch (IOException e) {
+          DriverStation.reportWarning(
+              "Falling back to JSON for trajectory " + entry.path + ": " + e.getMessage(), false);
+        }
+      }
+      Trajectory parsed = TrajectoryUtil.fromPathweaverJson(trajectoryPath);
+      if (PathWeaverConstants.kRetimeTrajectories) {
+        // The binary files are retimed at build time, the JSON has PathWeaver's timing.
+        entry.future.complete(TrajectoryRetimer.retime(parsed));
+      } else {
+        entry.future.complete(new Trajectory(List.copyOf(parsed.getStates())));
+      }
+    } catch (IOException e) {
+      DriverStation.reportError("Unable to open trajectory: " + entry.path, e.getStackTrace());
+      entry.future.complete(null);
+    } catch (RuntimeException e) {
+      DriverStation.reportError("Unable to parse trajectory: " + entry.path, e.getStackTrace());
+      entry.future.complete(null);
+    }
+  }
+}
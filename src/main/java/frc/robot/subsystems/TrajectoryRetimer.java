@@ -0,0 +1,220 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.trajectory.Trajectory;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.ModuleConstants;
+import frc.robot.Constants.PathWeaverConstants;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recomputes the timing of a PathWeaver trajectory for what our swerve modules can actually do.
+ * PathWeaver times every path with one velocity and acceleration limit for the whole robot, which
+ * is too fast around tight turns (the modules can't steer that quickly) and too slow on the
+ * straights. This keeps the path's poses and curvature and only changes the velocity, acceleration
+ * and time of each state.
+ *
+ * <p>The limits, all per module:
+ *
+ * <ul>
+ *   <li>Speed: the module top speed, minus what the heading controller can add while turning the
+ *       robot, times {@link PathWeaverConstants#kRetimeSpeedFraction} to leave room for feedback.
+ *   <li>Acceleration: the traction limit, shared between speeding up along the path and the
+ *       centripetal acceleration of the turn, and what the drive motors can do at the current
+ *       speed with {@link PathWeaverConstants#kRetimeVoltage} volts.
+ *   <li>Steering: following a curve turns every module at curvature * speed, so that has to stay
+ *       under the module's max turning speed, and curvature * acceleration under its max turning
+ *       acceleration.
+ * </ul>
+ *
+ * <p>The profile is the usual time optimal one: a forward pass that speeds up as fast as allowed,
+ * then a backward pass that makes sure every slowdown can be made in time.
+ *
+ * <p>Works on the packed {@link BinaryTrajectory} layout, so the build can run it on the exported
+ * JSON without the WPILib native libraries.
+ */
+public final class TrajectoryRetimer {
+
+  private static final int kTime = 0;
+  private static final int kX = 1;
+  private static final int kY = 2;
+  private static final int kVelocity = 4;
+  private static final int kAcceleration = 5;
+  private static final int kCurvature = 6;
+
+  // Distance from the robot center to a module
+  private static final double kModuleRadiusMeters =
+      Math.hypot(DriveConstants.kWheelBase / 2, DriveConstants.kTrackWidth / 2);
+
+  private static final double kMaxSpeedMetersPerSecond =
+      (DriveConstants.kMaxSpeedMetersPerSecond
+              - AutoConstants.kMaxAngularSpeedRadiansPerSecond * kModuleRadiusMeters)
+          * PathWeaverConstants.kRetimeSpeedFraction;
+
+  private TrajectoryRetimer() {}
+
+  /**
+   * Retimes a trajectory.
+   *
+   * @param trajectory the trajectory as PathWeaver timed it
+   * @return the same path with new timing, with an unmodifiable state list
+   */
+  public static Trajectory retime(Trajectory trajectory) {
+    List<Trajectory.State> states = trajectory.getStates();
+    double[] values = new double[states.size() * BinaryTrajectory.kFieldsPerState];
+    int i = 0;
+    for (Trajectory.State state : states) {
+      values[i++] = state.timeSeconds;
+      values[i++] = state.poseMeters.getX();
+      values[i++] = state.poseMeters.getY();
+      values[i++] = state.poseMeters.getRotation().getRadians();
+      values[i++] = state.velocityMetersPerSecond;
+      values[i++] = state.accelerationMetersPerSecondSq;
+      values[i++] = state.curvatureRadPerMeter;
+    }
+
+    retime(values);
+
+    List<Trajectory.State> retimed = new ArrayList<>(states.size());
+    for (int state = 0; state < states.size(); state++) {
+      int base = state * BinaryTrajectory.kFieldsPerState;
+      retimed.add(new Trajectory.State(values[base + kTime], values[base + kVelocity],
+          values[base + kAcceleration], states.get(state).poseMeters, values[base + kCurvature]));
+    }
+    return new Trajectory(List.copyOf(retimed));
+  }
+
+  /**
+   * Retimes a trajectory in place.
+   *
+   * @param values {@link BinaryTrajectory#kFieldsPerState} values per state, in BinaryTrajectory
+   *               order
+   */
+  public static void retime(double[] values) {
+    int count = values.length / BinaryTrajectory.kFieldsPerState;
+    if (count < 2) {
+      return;
+    }
+
+    // PathWeaver paths are either all forwards or all backwards.
+    boolean reversed = false;
+    for (int i = 0; i < count; i++) {
+      if (get(values, i, kVelocity) < 0) {
+        reversed = true;
+        break;
+      }
+    }
+
+    double[] distances = new double[count - 1];
+    double[] curvatures = new double[count];
+    double[] maxVelocities = new double[count];
+    for (int i = 0; i < count; i++) {
+      curvatures[i] = Math.abs(get(values, i, kCurvature));
+      maxVelocities[i] = maxVelocity(curvatures[i]);
+      if (i < count - 1) {
+        distances[i] = Math.hypot(get(values, i + 1, kX) - get(values, i, kX),
+            get(values, i + 1, kY) - get(values, i, kY));
+      }
+    }
+
+    // Start and end the way PathWeaver did, normally stopped.
+    double[] velocities = new double[count];
+    velocities[0] = Math.min(Math.abs(get(values, 0, kVelocity)), maxVelocities[0]);
+    velocities[count - 1] =
+        Math.min(Math.abs(get(values, count - 1, kVelocity)), maxVelocities[count - 1]);
+
+    // Forward pass, speed up as fast as we're allowed to.
+    for (int i = 0; i < count - 1; i++) {
+      double reachable = Math.sqrt(velocities[i] * velocities[i]
+          + 2 * maxAcceleration(velocities[i], curvatures[i]) * distances[i]);
+      double limit = i + 1 == count - 1 ? velocities[count - 1] : maxVelocities[i + 1];
+      velocities[i + 1] = Math.min(reachable, limit);
+    }
+
+    // Backward pass, make sure we can slow down in time for everything ahead.
+    for (int i = count - 1; i > 0; i--) {
+      double reachable = Math.sqrt(velocities[i] * velocities[i]
+          + 2 * maxDeceleration(velocities[i], curvatures[i]) * distances[i - 1]);
+      velocities[i - 1] = Math.min(velocities[i - 1], reachable);
+    }
+
+    double sign = reversed ? -1 : 1;
+    double time = get(values, 0, kTime);
+    for (int i = 0; i < count; i++) {
+      double acceleration = 0;
+      if (i < count - 1) {
+        double speedSum = velocities[i] + velocities[i + 1];
+        if (distances[i] > 1e-9 && speedSum > 1e-9) {
+          acceleration = (velocities[i + 1] * velocities[i + 1] - velocities[i] * velocities[i])
+              / (2 * distances[i]);
+        }
+      }
+      set(values, i, kTime, time);
+      set(values, i, kVelocity, sign * velocities[i]);
+      set(values, i, kAcceleration, sign * acceleration);
+      if (i < count - 1 && distances[i] > 1e-9) {
+        // Constant acceleration over the segment, so the time is distance over average speed.
+        double speedSum = velocities[i] + velocities[i + 1];
+        time += speedSum > 1e-9 ? 2 * distances[i] / speedSum
+            : get(values, i + 1, kTime) - get(values, i, kTime);
+      }
+    }
+  }
+
+  private static double maxVelocity(double curvature) {
+    double velocity = kMaxSpeedMetersPerSecond;
+    if (curvature > 1e-9) {
+      // Centripetal acceleration v^2 * k within the traction limit
+      velocity = Math.min(velocity,
+          Math.sqrt(PathWeaverConstants.kRetimeMaxModuleAccelerationMetersPerSecondSquared
+              / curvature));
+      // Module turning speed v * k within what the turning motors can do
+      velocity = Math.min(velocity,
+          ModuleConstants.kMaxModuleAngularSpeedRadiansPerSecond / curvature);
+    }
+    return velocity;
+  }
+
+  private static double maxAcceleration(double velocity, double curvature) {
+    // Whatever traction the turn doesn't use
+    double acceleration = tractionLeft(velocity, curvature);
+    // Motor voltage: V = kS + kV * v + kA * a
+    acceleration = Math.min(acceleration, (PathWeaverConstants.kRetimeVoltage
+        - DriveConstants.ksVolts - DriveConstants.kvVoltSecondsPerMeter * velocity)
+        / DriveConstants.kaVoltSecondsSquaredPerMeter);
+    return Math.max(steeringAccelerationLimit(acceleration, curvature), 0);
+  }
+
+  private static double maxDeceleration(double velocity, double curvature) {
+    double deceleration = tractionLeft(velocity, curvature);
+    // Braking, the back EMF and friction help: -V = kS + kV * v - kA * a
+    deceleration = Math.min(deceleration, (PathWeaverConstants.kRetimeVoltage
+        + DriveConstants.ksVolts + DriveConstants.kvVoltSecondsPerMeter * velocity)
+        / DriveConstants.kaVoltSecondsSquaredPerMeter);
+    return Math.max(steeringAccelerationLimit(deceleration, curvature), 0);
+  }
+
+  private static double tractionLeft(double velocity, double curvature) {
+    double total = PathWeaverConstants.kRetimeMaxModuleAccelerationMetersPerSecondSquared;
+    double centripetal = velocity * velocity * curvature;
+    return Math.sqrt(Math.max(total * total - centripetal * centripetal, 0));
+  }
+
+  private static double steeringAccelerationLimit(double acceleration, double curvature) {
+    // Speeding up through a curve speeds up the module turning too, a * k
+    if (curvature > 1e-9) {
+      return Math.min(acceleration,
+          ModuleConstants.kMaxModuleAngularAccelerationRadiansPerSecondSquared / curvature);
+    }
+    return acceleration;
+  }
+
+  private static double get(double[] values, int state, int field) {
+    return values[state * BinaryTrajectory.kFieldsPerState + field];
+  }
+
+  private static void set(double[] values, int state, int field, double value) {
+    values[state * BinaryTrajectory.kFieldsPerState + field] = value;
+  }
+}
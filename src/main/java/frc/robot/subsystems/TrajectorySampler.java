@@ -0,0 +1,149 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.trajectory.Trajectory;
+import java.util.List;
+
+/**
+ * Samples a trajectory for a follower that asks for steadily increasing times. Instead of
+ * Trajectory.sample(), which binary searches and makes a new State and Pose2d every call, this
+ * keeps a cursor on the last state it used and only walks forward from there, and interpolates
+ * into a State the caller reuses. Each sample is constant time and doesn't allocate.
+ *
+ * <p>The states are copied into packed arrays once, when the sampler is made. Going back in time
+ * (after {@link #reset()} or a restarted timer) still works, it just searches from the start.
+ *
+ * <p>Interpolation works like Trajectory.State.interpolate(), except the pose moves in a straight
+ * line between the two states instead of along a twist. The states are a few centimeters apart,
+ * so the difference is negligible.
+ */
+public class TrajectorySampler {
+
+  /**
+   * Holder a sample gets written into. Reuse one of these instead of making a new one per sample.
+   */
+  public static class State {
+
+    public double timeSeconds;
+    public double xMeters;
+    public double yMeters;
+    public double headingRadians;
+    public double velocityMetersPerSecond;
+    public double accelerationMetersPerSecondSq;
+    public double curvatureRadPerMeter;
+  }
+
+  private final int m_count;
+  private final double[] m_times;
+  private final double[] m_x;
+  private final double[] m_y;
+  private final double[] m_headings;
+  private final double[] m_velocities;
+  private final double[] m_accelerations;
+  private final double[] m_curvatures;
+
+  // Index of the state at or before the last sample time.
+  private int m_cursor = 0;
+
+  /**
+   * Creates a new TrajectorySampler.
+   *
+   * @param trajectory the trajectory to sample, with at least one state
+   */
+  public TrajectorySampler(Trajectory trajectory) {
+    List<Trajectory.State> states = trajectory.getStates();
+    if (states.isEmpty()) {
+      throw new IllegalArgumentException("Trajectory has no states");
+    }
+    m_count = states.size();
+    m_times = new double[m_count];
+    m_x = new double[m_count];
+    m_y = new double[m_count];
+    m_headings = new double[m_count];
+    m_velocities = new double[m_count];
+    m_accelerations = new double[m_count];
+    m_curvatures = new double[m_count];
+    for (int i = 0; i < m_count; i++) {
+      Trajectory.State state = states.get(i);
+      m_times[i] = state.timeSeconds;
+      m_x[i] = state.poseMeters.getX();
+      m_y[i] = state.poseMeters.getY();
+      m_headings[i] = state.poseMeters.getRotation().getRadians();
+      m_velocities[i] = state.velocityMetersPerSecond;
+      m_accelerations[i] = state.accelerationMetersPerSecondSq;
+      m_curvatures[i] = state.curvatureRadPerMeter;
+    }
+  }
+
+  /**
+   * Moves the cursor back to the start of the trajectory.
+   */
+  public void reset() {
+    m_cursor = 0;
+  }
+
+  public double getTotalTimeSeconds() {
+    return m_times[m_count - 1];
+  }
+
+  /**
+   * Samples the trajectory.
+   *
+   * @param timeSeconds time since the start of the trajectory
+   * @param into        where to put the state
+   */
+  public void sample(double timeSeconds, State into) {
+    if (timeSeconds <= m_times[0]) {
+      m_cursor = 0;
+      copy(0, into);
+      return;
+    }
+    if (timeSeconds >= m_times[m_count - 1]) {
+      m_cursor = m_count - 1;
+      copy(m_count - 1, into);
+      return;
+    }
+
+    if (timeSeconds < m_times[m_cursor]) {
+      m_cursor = 0;
+    }
+    while (m_times[m_cursor + 1] <= timeSeconds) {
+      m_cursor++;
+    }
+
+    int i = m_cursor;
+    double span = m_times[i + 1] - m_times[i];
+    double fraction = span > 0 ? (timeSeconds - m_times[i]) / span : 0;
+    double deltaT = timeSeconds - m_times[i];
+
+    // Integrate the velocity and acceleration of the earlier state to find how far along the
+    // segment we are, the same way Trajectory does.
+    double velocity = m_velocities[i];
+    double acceleration = m_accelerations[i];
+    boolean reversing = velocity < 0 || (velocity == 0 && acceleration < 0);
+    double distance = (velocity * deltaT + 0.5 * acceleration * deltaT * deltaT)
+        * (reversing ? -1 : 1);
+    double segmentLength = Math.hypot(m_x[i + 1] - m_x[i], m_y[i + 1] - m_y[i]);
+    double poseFraction = segmentLength > 1e-9 ? distance / segmentLength : fraction;
+    poseFraction = MathUtil.clamp(poseFraction, 0, 1);
+
+    into.timeSeconds = timeSeconds;
+    into.velocityMetersPerSecond = velocity + acceleration * deltaT;
+    into.accelerationMetersPerSecondSq = acceleration;
+    into.xMeters = m_x[i] + (m_x[i + 1] - m_x[i]) * poseFraction;
+    into.yMeters = m_y[i] + (m_y[i + 1] - m_y[i]) * poseFraction;
+    into.headingRadians = MathUtil.angleModulus(m_headings[i]
+        + MathUtil.angleModulus(m_headings[i + 1] - m_headings[i]) * poseFraction);
+    into.curvatureRadPerMeter = m_curvatures[i] + (m_curvatures[i + 1] - m_curvatures[i]) * fraction;
+  }
+
+  private void copy(int index, State into) {
+    into.timeSeconds = m_times[index];
+    into.xMeters = m_x[index];
+    into.yMeters = m_y[index];
+    into.headingRadians = m_headings[index];
+    into.velocityMetersPerSecond = m_velocities[index];
+    into.accelerationMetersPerSecondSq = m_accelerations[index];
+    into.curvatureRadPerMeter = m_curvatures[index];
+  }
+}
@@ -0,0 +1,198 @@
+package frc.robot.tools;
+
+import frc.robot.Constants.ShooterConstants;
+import frc.robot.subsystems.ShotMap;
+import frc.robot.subsystems.ShotRecorder;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Desktop tool that fits new shot tables from ShotRecorder logs. Run it with
+ * {@code ./gradlew tuneShotMap -PshotArgs="src/main/deploy/shotmap.csv shots-123.bin ..."} and it
+ * prints a new shotmap.csv.
+ *
+ * <p>Each table row moves towards the average commanded wheel speeds of the made shots near its
+ * distance, weighted by how close they were. Shots where the wheels weren't within the shooter's
+ * tolerance of the commanded speeds when the ball was fed are left out, the command isn't what
+ * was actually shot. Shots taken while moving are counted at the standstill distance
+ * they were equivalent to, the same way ShotMap does it. The current row counts as a few made shots
+ * of its own, so one lucky shot can't drag a row far. Misses and unlabeled shots are left out
+ * unless --unlabeled-as-made is given.
+ */
+public final class ShotTableTuner {
+
+  // How many made shots the current table row is worth.
+  private static final double kPriorWeight = 3;
+
+  private ShotTableTuner() {}
+
+  /** One logged shot, with the fields the tuner needs. */
+  private static class Shot {
+
+    double distance;
+    double radialVelocity;
+    double topTargetRPM;
+    double bottomTargetRPM;
+    double topRPM;
+    double bottomRPM;
+    Boolean made;
+
+    boolean wheelsWereReady() {
+      return Math.abs(topTargetRPM - topRPM) < ShooterConstants.kTopRPMTolerance
+          && Math.abs(bottomTargetRPM - bottomRPM) < ShooterConstants.kBottomRPMTolerance;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    boolean unlabeledAsMade = false;
+    List<String> files = new ArrayList<>();
+    for (String arg : args) {
+      if (arg.equals("--unlabeled-as-made")) {
+        unlabeledAsMade = true;
+      } else {
+        files.add(arg);
+      }
+    }
+    if (files.size() < 2) {
+      System.err.println(
+          "Usage: ShotTableTuner [--unlabeled-as-made] shotmap.csv shots.bin [shots.bin ...]");
+      System.exit(1);
+    }
+
+    List<double[]> table = readTable(files.get(0));
+    List<Shot> shots = new ArrayList<>();
+    for (String file : files.subList(1, files.size())) {
+      shots.addAll(readLog(file));
+    }
+
+    double[] topSums = new double[table.size()];
+    double[] bottomSums = new double[table.size()];
+    double[] weights = new double[table.size()];
+    int used = 0;
+    int notReady = 0;
+    for (Shot shot : shots) {
+      boolean made = shot.made != null ? shot.made : unlabeledAsMade;
+      if (!made) {
+        continue;
+      }
+      if (!shot.wheelsWereReady()) {
+        notReady++;
+        continue;
+      }
+      used++;
+      double distance = ShotMap.standstillDistance(shot.distance, shot.radialVelocity);
+      for (int i = 0; i < table.size(); i++) {
+        double spacing = rowSpacing(table, i);
+        double weight = 1 - Math.abs(distance - table.get(i)[0]) / spacing;
+        if (weight > 0) {
+          topSums[i] += weight * shot.topTargetRPM;
+          bottomSums[i] += weight * shot.bottomTargetRPM;
+          weights[i] += weight;
+        }
+      }
+    }
+
+    System.out.println("# Fit from " + used + " made shots out of " + shots.size() + " logged, "
+        + notReady + " made shots left out because the wheels weren't at speed.");
+    System.out.println("distance_feet,top_rpm,bottom_rpm");
+    for (int i = 0; i < table.size(); i++) {
+      double[] row = table.get(i);
+      double top = (kPriorWeight * row[1] + topSums[i]) / (kPriorWeight + weights[i]);
+      double bottom = (kPriorWeight * row[2] + bottomSums[i]) / (kPriorWeight + weights[i]);
+      System.out.printf("%s,%.0f,%.0f%n", trim(row[0] / 0.3048), top, bottom);
+    }
+  }
+
+  private static String trim(double value) {
+    double rounded = Math.round(value * 100) / 100.0;
+    return rounded == Math.rint(rounded)
+        ? Long.toString((long) rounded)
+        : Double.toString(rounded);
+  }
+
+  /**
+   * Distance to the nearest neighbouring row, how far a shot can be from a row and still count.
+   */
+  private static double rowSpacing(List<double[]> table, int i) {
+    double spacing = Double.POSITIVE_INFINITY;
+    if (i > 0) {
+      spacing = Math.min(spacing, table.get(i)[0] - table.get(i - 1)[0]);
+    }
+    if (i < table.size() - 1) {
+      spacing = Math.min(spacing, table.get(i + 1)[0] - table.get(i)[0]);
+    }
+    return spacing;
+  }
+
+  /**
+   * Reads shotmap.csv rows as {distance meters, top rpm, bottom rpm}.
+   */
+  private static List<double[]> readTable(String file) throws IOException {
+    List<double[]> table = new ArrayList<>();
+    for (String line : Files.readAllLines(Paths.get(file))) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#") || Character.isLetter(line.charAt(0))) {
+        continue;
+      }
+      String[] columns = line.split(",");
+      table.add(new double[] {
+          Double.parseDouble(columns[0].trim()) * 0.3048,
+          Double.parseDouble(columns[1].trim()),
+          Double.parseDouble(columns[2].trim())
+      });
+    }
+    return table;
+  }
+
+  private static List<Shot> readLog(String file) throws IOException {
+    Map<Integer, Shot> shots = new HashMap<>();
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != ShotRecorder.kMagic) {
+        throw new IOException(file + " is not a shot log");
+      }
+      short version = in.readShort();
+      if (version != ShotRecorder.kVersion) {
+        throw new IOException(file + " is shot log version " + version);
+      }
+      while (true) {
+        byte type;
+        try {
+          type = in.readByte();
+        } catch (EOFException e) {
+          break;
+        }
+        int index = in.readInt();
+        if (type == ShotRecorder.kShotRecord) {
+          float[] fields = new float[ShotRecorder.kShotFields];
+          for (int i = 0; i < fields.length; i++) {
+            fields[i] = in.readFloat();
+          }
+          Shot shot = shots.computeIfAbsent(index, key -> new Shot());
+          shot.distance = fields[1];
+          shot.topTargetRPM = fields[5];
+          shot.bottomTargetRPM = fields[6];
+          shot.topRPM = fields[7];
+          shot.bottomRPM = fields[8];
+          shot.radialVelocity = fields[11];
+        } else if (type == ShotRecorder.kLabelRecord) {
+          shots.computeIfAbsent(index, key -> new Shot()).made = in.readByte() == 1;
+        } else {
+          throw new IOException(file + " has an unknown record type " + type);
+        }
+      }
+    } catch (EOFException e) {
+      // The robot lost power partway through a record, keep what came before it.
+    }
+    return new ArrayList<>(shots.values());
+  }
+}
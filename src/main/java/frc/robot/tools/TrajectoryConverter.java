@@ -0,0 +1,72 @@
+package frc.robot.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import frc.robot.Constants.PathWeaverConstants;
+import frc.robot.subsystems.BinaryTrajectory;
+import frc.robot.subsystems.TrajectoryRetimer;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Desktop tool that converts the trajectories PathWeaver exports into BinaryTrajectory files.
+ * Runs as part of the build with {@code ./gradlew convertTrajectories}, which reads the exported
+ * .wpilib.json files and writes a .traj file for each into the output directory. The paths are
+ * retimed with TrajectoryRetimer on the way, so the robot doesn't have to.
+ *
+ * <p>The JSON is read with Jackson here rather than TrajectoryUtil, since TrajectoryUtil needs the
+ * WPILib native libraries, which the build doesn't have.
+ */
+public final class TrajectoryConverter {
+
+  private TrajectoryConverter() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: TrajectoryConverter <pathweaver output dir> <binary output dir>");
+      System.exit(1);
+    }
+    Path inputDirectory = Paths.get(args[0]);
+    Path outputDirectory = Paths.get(args[1]);
+    Files.createDirectories(outputDirectory);
+
+    ObjectMapper mapper = new ObjectMapper();
+    int converted = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(inputDirectory, "*.wpilib.json")) {
+      for (Path file : files) {
+        double[] values = readStates(mapper, file);
+        if (PathWeaverConstants.kRetimeTrajectories) {
+          TrajectoryRetimer.retime(values);
+        }
+        Path output =
+            outputDirectory.resolve(BinaryTrajectory.binaryPathFor(file).getFileName());
+        BinaryTrajectory.write(output, values);
+        converted++;
+      }
+    }
+    System.out.println("Converted " + converted + " trajectories into " + outputDirectory);
+  }
+
+  private static double[] readStates(ObjectMapper mapper, Path file) throws IOException {
+    JsonNode states = mapper.readTree(file.toFile());
+    if (!states.isArray() || states.size() == 0) {
+      throw new IOException("No trajectory states in " + file);
+    }
+    double[] values = new double[states.size() * BinaryTrajectory.kFieldsPerState];
+    int i = 0;
+    for (JsonNode state : states) {
+      JsonNode pose = state.path("pose");
+      values[i++] = state.path("time").asDouble();
+      values[i++] = pose.path("translation").path("x").asDouble();
+      values[i++] = pose.path("translation").path("y").asDouble();
+      values[i++] = pose.path("rotation").path("radians").asDouble();
+      values[i++] = state.path("velocity").asDouble();
+      values[i++] = state.path("acceleration").asDouble();
+      values[i++] = state.path("curvature").asDouble();
+    }
+    return values;
+  }
+}
@@ -0,0 +1,61 @@
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertEquals;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import frc.robot.Constants.ModuleConstants;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Runs the in-place steering controller next to WPILib's ProfiledPIDController on a simulated
+ * module and checks they give the same output every step.
+ */
+public class ContinuousProfiledPIDControllerTest {
+
+  private static final double kDelta = 1e-9;
+
+  @Test
+  public void matchesProfiledPIDController() {
+    ProfiledPIDController expected = new ProfiledPIDController(
+        ModuleConstants.kPModuleTurnController,
+        ModuleConstants.kIModuleTurnController,
+        ModuleConstants.kDModuleTurnController,
+        new TrapezoidProfile.Constraints(
+            ModuleConstants.kMaxModuleAngularSpeedRadiansPerSecond,
+            ModuleConstants.kMaxModuleAngularAccelerationRadiansPerSecondSquared));
+    expected.enableContinuousInput(-Math.PI, Math.PI);
+    ContinuousProfiledPIDController actual = new ContinuousProfiledPIDController(
+        ModuleConstants.kPModuleTurnController,
+        ModuleConstants.kIModuleTurnController,
+        ModuleConstants.kDModuleTurnController,
+        ModuleConstants.kMaxModuleAngularSpeedRadiansPerSecond,
+        ModuleConstants.kMaxModuleAngularAccelerationRadiansPerSecondSquared,
+        -Math.PI,
+        Math.PI);
+
+    Random random = new Random(4829);
+    double angle = 0.5;
+    expected.reset(angle);
+    actual.reset(angle);
+    double goal = 0;
+    for (int i = 0; i < 5000; i++) {
+      // New goal every so often, sometimes across the wrap, sometimes mid-turn.
+      if (i % 17 == 0) {
+        goal = MathUtil.angleModulus(random.nextDouble() * 2 * Math.PI);
+      }
+
+      double expectedOutput = expected.calculate(angle, goal);
+      double actualOutput = actual.calculate(angle, goal);
+      assertEquals("output at step " + i, expectedOutput, actualOutput, kDelta);
+      assertEquals("setpoint velocity at step " + i,
+          expected.getSetpoint().velocity, actual.getSetpointVelocity(), kDelta);
+
+      // The module follows the setpoint most of the way, so the profile starts from motion.
+      angle = MathUtil.angleModulus(
+          angle + 0.7 * (expected.getSetpoint().position - angle) + 0.01 * random.nextGaussian());
+    }
+  }
+}
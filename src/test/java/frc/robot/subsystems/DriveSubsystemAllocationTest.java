@@ -0,0 +1,130 @@
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import java.lang.management.ManagementFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that DriveSubsystem.drive() and the odometry update don't allocate once they're warmed up,
+ * so neither the main loop nor the 200 Hz odometry notifier makes garbage.
+ *
+ * <p>Sim time is paused before the subsystem is made, so the odometry notifier never runs and the
+ * modules keep the fresh snapshot the test hands them. That way the steering loop runs on every
+ * call, whatever the simulated Talons and CANCoders report.
+ */
+public class DriveSubsystemAllocationTest {
+
+  private static final int kWarmupCalls = 20000;
+  private static final int kMeasuredCalls = 10000;
+
+  private static final com.sun.management.ThreadMXBean kThreadBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  // Only one, the module layouts can't be added to Shuffleboard twice.
+  private static DriveSubsystem drive;
+
+  @BeforeClass
+  public static void setup() {
+    assertTrue(HAL.initialize(500, 0));
+    assertTrue(kThreadBean.isThreadAllocatedMemorySupported());
+    kThreadBean.setThreadAllocatedMemoryEnabled(true);
+    SimHooks.pauseTiming();
+    drive = new DriveSubsystem();
+  }
+
+  /**
+   * Gives every module a fresh snapshot. The odometry test reads the simulated sensors, which
+   * replaces them.
+   */
+  @Before
+  public void publishSnapshots() {
+    double now = Timer.getFPGATimestamp();
+    for (SwerveModule module : new SwerveModule[] {
+        drive.m_frontLeft, drive.m_frontRight, drive.m_rearLeft, drive.m_rearRight}) {
+      module.publishSnapshot(now, 1, 0.3, Math.toDegrees(0.3), 0);
+      assertFalse(module.isSensorDataStale());
+    }
+  }
+
+  @AfterClass
+  public static void cleanup() {
+    SimHooks.resumeTiming();
+  }
+
+  @Test
+  public void driveWithDefaultLoopsDoesNotAllocate() {
+    drive.setSteeringMode(SwerveModule.SteeringMode.kRoboRIO);
+    drive.setDriveVelocityMode(SwerveModule.DriveVelocityMode.kRoboRIO);
+    assertEquals(0, bytesAllocatedByDrive());
+  }
+
+  @Test
+  public void driveWithTalonVelocityLoopDoesNotAllocate() {
+    drive.setSteeringMode(SwerveModule.SteeringMode.kRoboRIO);
+    drive.setDriveVelocityMode(SwerveModule.DriveVelocityMode.kTalonFX);
+    assertEquals(0, bytesAllocatedByDrive());
+  }
+
+  @Test
+  public void driveWithMotionMagicSteeringDoesNotAllocate() {
+    drive.setSteeringMode(SwerveModule.SteeringMode.kTalonMotionMagic);
+    drive.setDriveVelocityMode(SwerveModule.DriveVelocityMode.kRoboRIO);
+    assertEquals(0, bytesAllocatedByDrive());
+  }
+
+  @Test
+  public void odometryUpdateDoesNotAllocate() {
+    for (int i = 0; i < kWarmupCalls; i++) {
+      drive.updateOdometry();
+    }
+
+    long threadId = Thread.currentThread().getId();
+    long before = kThreadBean.getThreadAllocatedBytes(threadId);
+    long after = kThreadBean.getThreadAllocatedBytes(threadId);
+    long overhead = after - before;
+
+    before = kThreadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < kMeasuredCalls; i++) {
+      drive.updateOdometry();
+    }
+    after = kThreadBean.getThreadAllocatedBytes(threadId);
+    assertEquals(0, after - before - overhead);
+  }
+
+  /**
+   * Calls drive() enough times for the JIT to compile it, then counts what this thread allocates
+   * over another run of calls.
+   */
+  private static long bytesAllocatedByDrive() {
+    callDrive(kWarmupCalls);
+
+    // Reading the counter can allocate by itself, take that out.
+    long threadId = Thread.currentThread().getId();
+    long before = kThreadBean.getThreadAllocatedBytes(threadId);
+    long after = kThreadBean.getThreadAllocatedBytes(threadId);
+    long overhead = after - before;
+
+    before = kThreadBean.getThreadAllocatedBytes(threadId);
+    callDrive(kMeasuredCalls);
+    after = kThreadBean.getThreadAllocatedBytes(threadId);
+    return after - before - overhead;
+  }
+
+  private static void callDrive(int calls) {
+    for (int i = 0; i < calls; i++) {
+      // Sweep the sticks around so every module gets flipped and desaturated along the way.
+      double phase = i * 0.01;
+      drive.drive(4 * Math.cos(phase), 4 * Math.sin(phase), 2 * Math.sin(phase * 0.3),
+          i % 2 == 0);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.filter.LinearFilter;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.system.LinearSystemLoop;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.simulation.FlywheelSim;
+import frc.robot.Constants.ShooterConstants;
+import frc.robot.subsystems.ShooterSubsystem.ShooterControlMode;
+
+/**
+ * The top shooter wheel in a FlywheelSim, run the way the robot runs it in either control mode.
+ * The state space loop from ShooterSubsystem runs every 20 ms. The Talon velocity PIDF, with the
+ * gains ShooterSubsystem configures, runs every 1 ms like it does on the Talon. The sim steps every
+ * 1 ms either way. A recovery kick, if there is one, is updated every 20 ms and added on top like
+ * ShooterSubsystem does. The wheel acceleration for the time to ready prediction is also filtered
+ * every 20 ms the way ShooterSubsystem does it.
+ */
+class FlywheelBench {
+
+  private static final double kStepSeconds = 0.001;
+  private static final int kStepsPerCycle = 20;
+  private static final double kCycleSeconds = kStepSeconds * kStepsPerCycle;
+
+  private final ShooterControlMode m_mode;
+  private final ShooterSubsystem.RecoveryKick m_kick;
+  private final FlywheelSim m_sim = new FlywheelSim(
+      DCMotor.getFalcon500(1), 1.0, ShooterConstants.kTopFlywheelMomentOfInertia);
+  private final LinearSystemLoop<N1, N1, N1> m_loop =
+      ShooterSubsystem.createFlywheelLoop(ShooterConstants.kTopFlywheelMomentOfInertia);
+
+  private int m_steps = 0;
+  private double m_targetRPM = 0;
+  private double m_volts = 0;
+  private double m_kickVolts = 0;
+  // Talon integral accumulator, in native velocity units
+  private double m_integral = 0;
+  private final LinearFilter m_accelerationFilter = LinearFilter.movingAverage(5);
+  private double m_acceleration = 0;
+  private double m_lastPeriodicRPM = Double.NaN;
+
+  FlywheelBench(ShooterControlMode mode) {
+    this(mode, null);
+  }
+
+  FlywheelBench(ShooterControlMode mode, ShooterSubsystem.RecoveryKick kick) {
+    m_mode = mode;
+    m_kick = kick;
+  }
+
+  double getTimeSeconds() {
+    return m_steps * kStepSeconds;
+  }
+
+  double getRPM() {
+    return m_sim.getAngularVelocityRPM();
+  }
+
+  /**
+   * Sets the target speed. Like ShooterSubsystem, the state space loop starts from the measured
+   * speed.
+   */
+  void setTargetRPM(double rpm) {
+    m_targetRPM = rpm;
+    m_loop.reset(VecBuilder.fill(m_sim.getAngularVelocityRadPerSec()));
+  }
+
+  /**
+   * Takes some speed off the wheel all at once, like a ball going through it, and starts the kick.
+   */
+  void ball(double dipRPM) {
+    m_sim.setState(VecBuilder.fill(Units.rotationsPerMinuteToRadiansPerSecond(getRPM() - dipRPM)));
+    if (m_kick != null) {
+      m_kick.start(getTimeSeconds(), getRPM());
+    }
+  }
+
+  /**
+   * What ShooterSubsystem.getTimeToReadySeconds() would say for the wheel, as of the last
+   * periodic().
+   */
+  double getTimeToReadySeconds() {
+    return ShooterSubsystem.timeToReady(
+        m_targetRPM - m_lastPeriodicRPM, m_acceleration, ShooterConstants.kTopRPMTolerance);
+  }
+
+  /**
+   * Runs one robot loop, starting with its periodic(), up to the start of the next one.
+   */
+  void runCycle() {
+    do {
+      step();
+    } while (m_steps % kStepsPerCycle != 0);
+  }
+
+  void run(double seconds) {
+    int steps = (int) Math.round(seconds / kStepSeconds);
+    for (int i = 0; i < steps; i++) {
+      step();
+    }
+  }
+
+  /**
+   * Runs until the wheel is within the top wheel tolerance of the target, then to the end of that
+   * robot loop so the next ball lines up with a periodic() call.
+   *
+   * @return seconds until the wheel was in tolerance, or infinity if it never got there
+   */
+  double runUntilReady(double timeoutSeconds) {
+    double start = getTimeSeconds();
+    while (getTimeSeconds() - start < timeoutSeconds) {
+      step();
+      if (Math.abs(m_targetRPM - getRPM()) < ShooterConstants.kTopRPMTolerance) {
+        double elapsed = getTimeSeconds() - start;
+        while (m_steps % kStepsPerCycle != 0) {
+          step();
+        }
+        return elapsed;
+      }
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  private void step() {
+    if (m_steps % kStepsPerCycle == 0) {
+      periodic();
+    }
+    if (m_mode == ShooterControlMode.kTalonVelocity) {
+      m_volts = talonVelocityVolts(getRPM());
+    }
+    m_sim.setInputVoltage(m_volts);
+    m_sim.update(kStepSeconds);
+    m_steps++;
+  }
+
+  /** What ShooterSubsystem.periodic() does for the wheel. */
+  private void periodic() {
+    if (!Double.isNaN(m_lastPeriodicRPM)) {
+      m_acceleration =
+          m_accelerationFilter.calculate((getRPM() - m_lastPeriodicRPM) / kCycleSeconds);
+    }
+    m_lastPeriodicRPM = getRPM();
+    if (m_kick != null) {
+      m_kickVolts = m_kick.update(getTimeSeconds(), getRPM(), m_targetRPM);
+    }
+    if (m_mode == ShooterControlMode.kStateSpace) {
+      m_loop.setNextR(VecBuilder.fill(Units.rotationsPerMinuteToRadiansPerSecond(m_targetRPM)));
+      m_loop.correct(VecBuilder.fill(m_sim.getAngularVelocityRadPerSec()));
+      m_loop.predict(kCycleSeconds);
+      m_volts = MathUtil.clamp(m_loop.getU(0) + m_kickVolts, -12, 12);
+    }
+  }
+
+  /**
+   * The Talon FX velocity PIDF. Gains are per native unit (ticks per 100 ms) and the output is out
+   * of 1023, with voltage compensation at 12 V. The kick goes in as arbitrary feedforward.
+   */
+  private double talonVelocityVolts(double rpm) {
+    double target = m_targetRPM / 600.0 * 2048.0;
+    double error = (m_targetRPM - rpm) / 600.0 * 2048.0;
+    if (Math.abs(error) < ShooterConstants.kTalonIntegralZoneRPM / 600.0 * 2048.0) {
+      m_integral += error;
+    } else {
+      m_integral = 0;
+    }
+    double output = (ShooterConstants.topkV * target + ShooterConstants.topkP * error
+        + ShooterConstants.kTalonVelocitykI * m_integral) / 1023 + m_kickVolts / 12;
+    return MathUtil.clamp(output, -1, 1) * 12;
+  }
+}
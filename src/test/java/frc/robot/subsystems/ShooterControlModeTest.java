@@ -0,0 +1,58 @@
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.subsystems.ShooterSubsystem.ShooterControlMode;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the state space flywheel loop against the Talon velocity PIDF on a simulated top wheel.
+ * The sim uses the same inertia the state space loop is built from, so this shows what the loop
+ * can do once the real inertia is measured, not how it does on the robot today.
+ */
+public class ShooterControlModeTest {
+
+  private static final double kTargetRPM = 3000;
+  private static final double kBallDipRPM = 300;
+
+  @Before
+  public void setup() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @Test
+  public void stateSpaceSpinsUpFaster() {
+    double talon = spinUpSeconds(ShooterControlMode.kTalonVelocity);
+    double stateSpace = spinUpSeconds(ShooterControlMode.kStateSpace);
+
+    assertTrue("Talon spin up took " + talon + " s", talon < 1);
+    assertTrue("State space spin up took " + stateSpace + " s, Talon " + talon + " s",
+        stateSpace < talon);
+  }
+
+  @Test
+  public void stateSpaceRecoversFaster() {
+    double talon = recoverySeconds(ShooterControlMode.kTalonVelocity);
+    double stateSpace = recoverySeconds(ShooterControlMode.kStateSpace);
+
+    assertTrue("Talon recovery took " + talon + " s", talon < 0.5);
+    assertTrue("State space recovery took " + stateSpace + " s, Talon " + talon + " s",
+        stateSpace < talon);
+  }
+
+  private static double spinUpSeconds(ShooterControlMode mode) {
+    FlywheelBench bench = new FlywheelBench(mode);
+    bench.setTargetRPM(kTargetRPM);
+    return bench.runUntilReady(3);
+  }
+
+  private static double recoverySeconds(ShooterControlMode mode) {
+    FlywheelBench bench = new FlywheelBench(mode);
+    bench.setTargetRPM(kTargetRPM);
+    bench.run(2);
+    bench.ball(kBallDipRPM);
+    return bench.runUntilReady(3);
+  }
+}
@@ -0,0 +1,72 @@
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.Constants.ShooterConstants;
+import frc.robot.subsystems.ShooterSubsystem.RecoveryKick;
+import frc.robot.subsystems.ShooterSubsystem.ShooterControlMode;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Shoots two ball bursts through a simulated top wheel on the Talon velocity loop, feeding the
+ * second ball as soon as the wheel is back in tolerance, and checks that the learned recovery kick
+ * makes the burst shorter.
+ */
+public class ShooterRecoveryKickTest {
+
+  private static final double kTargetRPM = 3000;
+  private static final double kBallDipRPM = 300;
+  private static final int kBursts = 6;
+
+  @Before
+  public void setup() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @Test
+  public void kickShortensTwoBallBurst() {
+    FlywheelBench withoutKick = spunUpBench(null);
+    double burstWithoutKick = burstSeconds(withoutKick);
+
+    RecoveryKick kick = new RecoveryKick("top", ShooterConstants.kTopRPMTolerance);
+    FlywheelBench withKick = spunUpBench(kick);
+    double burstWithKick = 0;
+    double previousLearnedDip = 0;
+    for (int i = 0; i < kBursts; i++) {
+      previousLearnedDip = kick.getLearnedDipRPM();
+      burstWithKick = burstSeconds(withKick);
+      withKick.run(1);
+    }
+
+    assertTrue("The kick turned itself off", kick.isEnabled());
+    assertTrue("The kick didn't learn anything", kick.getLearnedDipRPM() > 0);
+    // Once what's left after the kick is inside the tolerance it stops changing.
+    assertEquals(previousLearnedDip, kick.getLearnedDipRPM(), 1e-9);
+    assertTrue("Burst took " + burstWithKick + " s with the kick, " + burstWithoutKick
+        + " s without", burstWithKick < burstWithoutKick);
+  }
+
+  private static FlywheelBench spunUpBench(RecoveryKick kick) {
+    FlywheelBench bench = new FlywheelBench(ShooterControlMode.kTalonVelocity, kick);
+    bench.setTargetRPM(kTargetRPM);
+    bench.run(2);
+    return bench;
+  }
+
+  /**
+   * Shoots two balls, the second as soon as the wheel is ready again.
+   *
+   * @return seconds from the first ball until the wheel is ready after the second
+   */
+  private static double burstSeconds(FlywheelBench bench) {
+    double start = bench.getTimeSeconds();
+    bench.ball(kBallDipRPM);
+    bench.runUntilReady(1);
+    bench.ball(kBallDipRPM);
+    bench.runUntilReady(1);
+    return bench.getTimeSeconds() - start;
+  }
+}
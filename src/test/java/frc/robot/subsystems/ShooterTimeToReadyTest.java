@@ -0,0 +1,79 @@
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.Constants.ShooterConstants;
+import frc.robot.Constants.TowerConstants;
+import frc.robot.subsystems.ShooterSubsystem.ShooterControlMode;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the time to ready prediction against a simulated top wheel. The shooting commands start
+ * the tower once the prediction drops to the ball transit time, so whenever it does, the wheel has
+ * to be in tolerance by the time the ball gets there.
+ */
+public class ShooterTimeToReadyTest {
+
+  private static final double kCycleSeconds = 0.02;
+  private static final double[] kTargetRPMs = {2000, 3000, 4000};
+
+  @Before
+  public void setup() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @Test
+  public void spinUpPredictionIsNotEarly() {
+    for (ShooterControlMode mode : ShooterControlMode.values()) {
+      for (double target : kTargetRPMs) {
+        FlywheelBench bench = new FlywheelBench(mode);
+        bench.setTargetRPM(target);
+        checkPrediction(bench, target, mode + " spin up to " + target);
+      }
+    }
+  }
+
+  @Test
+  public void recoveryPredictionIsNotEarly() {
+    for (ShooterControlMode mode : ShooterControlMode.values()) {
+      for (double target : kTargetRPMs) {
+        FlywheelBench bench = new FlywheelBench(mode);
+        bench.setTargetRPM(target);
+        bench.run(2);
+        bench.ball(target * 0.1);
+        checkPrediction(bench, target, mode + " recovery at " + target);
+      }
+    }
+  }
+
+  /**
+   * Runs robot loops until the wheel is in tolerance at the start of one. Every loop where the
+   * prediction would have started the tower, the wheel must be ready by the time the ball gets
+   * there, give or take the loop it's checked in. The prediction also has to start the tower
+   * before the wheel is ready, or it's no better than waiting.
+   */
+  private static void checkPrediction(FlywheelBench bench, double target, String name) {
+    double start = bench.getTimeSeconds();
+    double[] feedTimes = new double[200];
+    int feeds = 0;
+    while (Math.abs(target - bench.getRPM()) >= ShooterConstants.kTopRPMTolerance) {
+      assertTrue(name + " never got to speed", bench.getTimeSeconds() - start < 3);
+      double now = bench.getTimeSeconds();
+      bench.runCycle();
+      if (bench.getTimeToReadySeconds() <= TowerConstants.kBallTransitTimeSeconds) {
+        feedTimes[feeds++] = now;
+      }
+    }
+    double ready = bench.getTimeSeconds();
+
+    for (int i = 0; i < feeds; i++) {
+      double arrival = feedTimes[i] + TowerConstants.kBallTransitTimeSeconds;
+      assertTrue(name + ": fed at " + (feedTimes[i] - start) + " s, ready at " + (ready - start)
+          + " s", ready <= arrival + kCycleSeconds + 1e-9);
+    }
+    assertTrue(name + ": the prediction never started the tower early",
+        feeds > 0 && feedTimes[0] < ready);
+  }
+}
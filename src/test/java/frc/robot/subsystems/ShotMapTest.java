@@ -0,0 +1,121 @@
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.Constants.ShooterConstants;
+import java.lang.management.ManagementFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that standing still, ShotMap.lookup() gives the same wheel speeds as the table scan it
+ * replaced on the tuned tables, and that lookups don't allocate once they're warmed up. This isn't
+ * a benchmark, it only shows the lookup gives the same answers without making garbage.
+ */
+public class ShotMapTest {
+
+  private static final double kStepMeters = 0.001;
+  private static final double kToleranceRPM = 1e-6;
+
+  private static final int kWarmupCalls = 20000;
+  private static final int kMeasuredCalls = 10000;
+
+  private static final com.sun.management.ThreadMXBean kThreadBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private ShotMap m_shotMap;
+
+  @Before
+  public void setup() {
+    assertTrue(HAL.initialize(500, 0));
+    m_shotMap = new ShotMap(ShooterConstants.topMotorValues, ShooterConstants.bottomMotorValues);
+  }
+
+  @Test
+  public void matchesTableScan() {
+    ShotMap.Shot shot = new ShotMap.Shot();
+    double[][] top = ShooterConstants.topMotorValues;
+    double[][] bottom = ShooterConstants.bottomMotorValues;
+
+    // Every row except the last, where the old scan didn't find a segment (see below).
+    for (int i = 0; i < top.length - 1; i++) {
+      double distance = top[i][0];
+      m_shotMap.lookup(distance, shot);
+      assertEquals("Top at row " + i, top[i][1], shot.topRPM, kToleranceRPM);
+      assertEquals("Bottom at row " + i, bottom[i][1], shot.bottomRPM, kToleranceRPM);
+    }
+
+    double maxDistance = top[top.length - 1][0];
+    for (double distance = top[0][0]; distance < maxDistance; distance += kStepMeters) {
+      m_shotMap.lookup(distance, shot);
+      assertEquals("Top at " + distance + " m", calculateRPM(top, distance), shot.topRPM,
+          kToleranceRPM);
+      assertEquals("Bottom at " + distance + " m", calculateRPM(bottom, distance), shot.bottomRPM,
+          kToleranceRPM);
+    }
+
+    // Both hold the last row past the end of the table.
+    for (double distance = maxDistance + kStepMeters; distance < maxDistance + 2;
+        distance += kStepMeters) {
+      m_shotMap.lookup(distance, shot);
+      assertEquals(calculateRPM(top, distance), shot.topRPM, kToleranceRPM);
+      assertEquals(calculateRPM(bottom, distance), shot.bottomRPM, kToleranceRPM);
+    }
+  }
+
+  @Test
+  public void lookupDoesNotAllocate() {
+    ShotMap.Shot shot = new ShotMap.Shot();
+    lookUp(shot, kWarmupCalls);
+
+    // Reading the counter can allocate by itself, take that out.
+    long threadId = Thread.currentThread().getId();
+    long before = kThreadBean.getThreadAllocatedBytes(threadId);
+    long after = kThreadBean.getThreadAllocatedBytes(threadId);
+    long overhead = after - before;
+
+    before = kThreadBean.getThreadAllocatedBytes(threadId);
+    lookUp(shot, kMeasuredCalls);
+    after = kThreadBean.getThreadAllocatedBytes(threadId);
+    assertEquals(0, after - before - overhead);
+  }
+
+  private void lookUp(ShotMap.Shot shot, int calls) {
+    for (int i = 0; i < calls; i++) {
+      // Sweep past both ends of the grid in distance and radial velocity.
+      double distance = 1 + 5 * (i % 1000) / 1000.0;
+      double radialVelocity = 4 * Math.sin(i * 0.01);
+      m_shotMap.lookup(distance, radialVelocity, shot);
+    }
+  }
+
+  /**
+   * The scan LimelightSubsystem.calculateRPM() did, with the distance passed in. The original
+   * caught the out of bounds read when the distance was exactly the last row and gave back the
+   * first row's speed, so that point isn't compared. Below the first row it interpolated from 0
+   * RPM, where the shot map now clamps, so that isn't compared either.
+   */
+  private static double calculateRPM(double[][] table, double distance) {
+    if (table[table.length - 1][0] < distance) return table[table.length - 1][1];
+
+    double lowerDistance = 0;
+    double lowerSpeed = 0;
+    double higherDistance = 0.1;
+    double higherSpeed = 0;
+
+    for (int i = 0; i < table.length - 1; i++) {
+      if (table[i][0] <= distance && table[i + 1][0] > distance) {
+        lowerDistance = table[i][0];
+        lowerSpeed = table[i][1];
+        higherDistance = table[i + 1][0];
+        higherSpeed = table[i + 1][1];
+        break;
+      }
+    }
+
+    double linearSlope = (higherSpeed - lowerSpeed) / (higherDistance - lowerDistance);
+    return (linearSlope * (distance - lowerDistance) + lowerSpeed);
+  }
+}
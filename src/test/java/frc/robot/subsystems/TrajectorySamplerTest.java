@@ -0,0 +1,134 @@
+package frc.robot.subsystems;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryUtil;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks TrajectorySampler against Trajectory.sample() on every path in the deploy directory, and
+ * that sampling doesn't allocate once it's warmed up. This isn't a benchmark, it only shows the
+ * sampler gives the same answers without making garbage.
+ */
+public class TrajectorySamplerTest {
+
+  // Tests run from the project directory.
+  private static final Path kPathDirectory = Paths.get("src", "main", "deploy", "output");
+  private static final double kStepSeconds = 0.001;
+  // The sampler moves in a straight line between states instead of along the arc, which comes to
+  // at most about 1.3 mm on the deploy paths.
+  private static final double kPositionToleranceMeters = 0.002;
+  private static final double kTolerance = 1e-6;
+
+  private static final int kWarmupPasses = 20;
+  private static final int kMeasuredPasses = 10;
+
+  private static final com.sun.management.ThreadMXBean kThreadBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private List<Trajectory> m_trajectories;
+  private List<String> m_names;
+
+  @Before
+  public void setup() throws IOException {
+    assertTrue(HAL.initialize(500, 0));
+    List<Path> paths;
+    try (Stream<Path> files = Files.list(kPathDirectory)) {
+      paths = files.filter(path -> path.toString().endsWith(".wpilib.json"))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+    assertFalse("No paths in " + kPathDirectory.toAbsolutePath(), paths.isEmpty());
+
+    m_trajectories = new ArrayList<>();
+    m_names = new ArrayList<>();
+    for (Path path : paths) {
+      m_trajectories.add(TrajectoryUtil.fromPathweaverJson(path));
+      m_names.add(path.getFileName().toString());
+    }
+  }
+
+  @Test
+  public void matchesTrajectorySample() {
+    TrajectorySampler.State sampled = new TrajectorySampler.State();
+    for (int i = 0; i < m_trajectories.size(); i++) {
+      Trajectory trajectory = m_trajectories.get(i);
+      TrajectorySampler sampler = new TrajectorySampler(trajectory);
+      double totalTime = trajectory.getTotalTimeSeconds();
+      assertEquals(totalTime, sampler.getTotalTimeSeconds(), 0);
+
+      // Forwards like the follower, then once more from the start without a reset.
+      for (int pass = 0; pass < 2; pass++) {
+        for (double t = -0.1; t <= totalTime + 0.1; t += kStepSeconds) {
+          sampler.sample(t, sampled);
+          assertMatches(m_names.get(i) + " at " + t + " s", trajectory.sample(t), sampled);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void sampleDoesNotAllocate() {
+    List<TrajectorySampler> samplers = new ArrayList<>();
+    for (Trajectory trajectory : m_trajectories) {
+      samplers.add(new TrajectorySampler(trajectory));
+    }
+    TrajectorySampler.State into = new TrajectorySampler.State();
+
+    sampleAll(samplers, into, kWarmupPasses);
+
+    // Reading the counter can allocate by itself, take that out.
+    long threadId = Thread.currentThread().getId();
+    long before = kThreadBean.getThreadAllocatedBytes(threadId);
+    long after = kThreadBean.getThreadAllocatedBytes(threadId);
+    long overhead = after - before;
+
+    before = kThreadBean.getThreadAllocatedBytes(threadId);
+    sampleAll(samplers, into, kMeasuredPasses);
+    after = kThreadBean.getThreadAllocatedBytes(threadId);
+    assertEquals(0, after - before - overhead);
+  }
+
+  private static void sampleAll(List<TrajectorySampler> samplers, TrajectorySampler.State into,
+      int passes) {
+    for (int pass = 0; pass < passes; pass++) {
+      for (int i = 0; i < samplers.size(); i++) {
+        TrajectorySampler sampler = samplers.get(i);
+        sampler.reset();
+        double totalTime = sampler.getTotalTimeSeconds();
+        for (double t = 0; t <= totalTime; t += kStepSeconds) {
+          sampler.sample(t, into);
+        }
+      }
+    }
+  }
+
+  private static void assertMatches(String message, Trajectory.State expected,
+      TrajectorySampler.State actual) {
+    assertEquals(message, expected.timeSeconds, actual.timeSeconds, kTolerance);
+    assertEquals(message, expected.poseMeters.getX(), actual.xMeters, kPositionToleranceMeters);
+    assertEquals(message, expected.poseMeters.getY(), actual.yMeters, kPositionToleranceMeters);
+    assertEquals(message, 0, MathUtil.angleModulus(
+        expected.poseMeters.getRotation().getRadians() - actual.headingRadians), kTolerance);
+    assertEquals(message, expected.velocityMetersPerSecond, actual.velocityMetersPerSecond,
+        kTolerance);
+    assertEquals(message, expected.accelerationMetersPerSecondSq,
+        actual.accelerationMetersPerSecondSq, kTolerance);
+    assertEquals(message, expected.curvatureRadPerMeter, actual.curvatureRadPerMeter, kTolerance);
+  }
+}